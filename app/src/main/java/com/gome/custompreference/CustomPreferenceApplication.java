@@ -0,0 +1,45 @@
+package com.gome.custompreference;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.SparseArray;
+
+import com.gome.preference.PersistedValuePreloader;
+import com.gome.preference.PreferenceWriteBuffer;
+
+/**
+ * Starts loading the persisted preference values when the process starts, so the fragments
+ * find them in memory when they add their hierarchy. Also sets up the process wide
+ * {@link PreferenceWriteBuffer} once for every screen.
+ */
+public class CustomPreferenceApplication extends Application {
+
+    // One per screen, by the XML the screen is built from.
+    private static final SparseArray<PersistedValuePreloader> sPreloaders = new SparseArray<>();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_PER_FRAME);
+        // Both fragments persist to the default preferences.
+        final SharedPreferences sharedPreferences =
+                PreferenceManager.getDefaultSharedPreferences(this);
+        sPreloaders.put(R.xml.preferences,
+                PersistedValuePreloader.start(this, sharedPreferences, R.xml.preferences));
+        sPreloaders.put(R.xml.preferences_v7,
+                PersistedValuePreloader.start(this, sharedPreferences, R.xml.preferences_v7));
+    }
+
+    /**
+     * Drops the values preloaded for the screen built from {@code xmlResId} once its
+     * hierarchy read its initial state, the preferences are in memory from then on.
+     */
+    public static void releasePreloader(int xmlResId) {
+        final PersistedValuePreloader preloader = sPreloaders.get(xmlResId);
+        if (preloader != null) {
+            preloader.release();
+            sPreloaders.remove(xmlResId);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.gome.custompreference;
 import android.os.Bundle;
 import android.preference.PreferenceActivity;
 
+import com.gome.preference.CompiledPreferences;
+
 public class PreferenceTestActivity extends PreferenceActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 //        setContentView(R.layout.activity_preference);
-        addPreferencesFromResource(R.xml.preferences);
+        CompiledPreferences.addPreferencesFromResource(this, R.xml.preferences);
     }
 }
@@ -3,7 +3,12 @@ package com.gome.custompreference.fragment;
 import android.os.Bundle;
 import android.preference.PreferenceFragment;
 
+import com.gome.custompreference.CustomPreferenceApplication;
 import com.gome.custompreference.R;
+import com.gome.preference.CompiledPreferences;
+import com.gome.preference.PreferenceWriteBuffer;
+import com.gome.preference.RowViewFactories;
+import com.gome.preference.RowViewPool;
 
 
 /**
@@ -12,14 +17,35 @@ import com.gome.custompreference.R;
 
 public class CustomFragment extends PreferenceFragment {
 
+    private RowViewPool mRowViewPool;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        RowViewFactories.registerDefaults();
         // 添加 Preferences XML
-        addPreferencesFromResource(R.xml.preferences);
+        CompiledPreferences.addPreferencesFromResource(this, R.xml.preferences);
+        // The initial states were read from the values preloaded by the application.
+        CustomPreferenceApplication.releasePreloader(R.xml.preferences);
+        // Build the first rows while the rest of the fragment is created.
+        mRowViewPool = new RowViewPool(getActivity());
+        mRowViewPool.prefill(getPreferenceScreen());
+        RowViewPool.setDefault(mRowViewPool);
 
 //        CustomFragment_v14.this.set
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        PreferenceWriteBuffer.flush();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mRowViewPool.release();
+    }
+
 
 }
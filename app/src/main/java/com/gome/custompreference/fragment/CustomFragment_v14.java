@@ -2,11 +2,19 @@ package com.gome.custompreference.fragment;
 
 import android.os.Bundle;
 import android.support.v14.preference.PreferenceFragment;
+import android.support.v7.preference.PreferenceScreen;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.gome.custompreference.CustomPreferenceApplication;
 import com.gome.custompreference.R;
+import com.gome.preference.PreferenceWriteBuffer;
+import com.gome.preference.RowViewFactories;
+import com.gome.preference.RowViewPool;
+import com.gome.preference.support.CompiledPreferences;
+import com.gome.preference.support.CustomPreferenceGroupAdapter;
 
 
 /**
@@ -15,6 +23,8 @@ import com.gome.custompreference.R;
 
 public class CustomFragment_v14 extends PreferenceFragment {
 
+    private RowViewPool mRowViewPool;
+
     /**
      * Called during {@link #onCreate(Bundle)} to supply the preferences for this fragment.
      * Subclasses are expected to call {@link #setPreferenceScreen(PreferenceScreen)} either
@@ -25,20 +35,27 @@ public class CustomFragment_v14 extends PreferenceFragment {
      * @param rootKey            If non-null, this custom_preference fragment should be rooted at the
      *                           {@link PreferenceScreen} with this key.
      */
-    @Override
-    public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
-
-    }
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        RowViewFactories.registerDefaults();
         // 添加 Preferences XML
-        addPreferencesFromResource(R.xml.preferences_v7);
+        CompiledPreferences.addPreferencesFromResource(this, R.xml.preferences_v7);
+        // The initial states were read from the values preloaded by the application.
+        CustomPreferenceApplication.releasePreloader(R.xml.preferences_v7);
+        // Build the first rows while the rest of the fragment is created.
+        mRowViewPool = new RowViewPool(getPreferenceManager().getContext());
+        mRowViewPool.prefill(getPreferenceScreen());
+        RowViewPool.setDefault(mRowViewPool);
 
 //        CustomFragment_v14.this.setDividerHeight(0);
     }
 
+    @Override
+    protected RecyclerView.Adapter onCreateAdapter(PreferenceScreen preferenceScreen) {
+        return new CustomPreferenceGroupAdapter(preferenceScreen);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         return super.onCreateView(inflater, container, savedInstanceState);
@@ -50,4 +67,16 @@ public class CustomFragment_v14 extends PreferenceFragment {
         super.onViewCreated(view, savedInstanceState);
         setDivider(null);
     }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        PreferenceWriteBuffer.flush();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mRowViewPool.release();
+    }
 }
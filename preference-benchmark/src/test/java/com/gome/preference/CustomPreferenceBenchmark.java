@@ -0,0 +1,216 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.ListView;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Row creation and binding cost of the framework {@link CustomPreference} hierarchy, as driven
+ * by {@link android.preference.PreferenceGroupAdapter} while a list scrolls.
+ * <p>
+ * The {@code factory} variants build the rows with the registered {@link OriginRowViewFactory}
+ * instead of inflating {@code origin_preference}. The plain {@code onBindView} variants rebind
+ * every row with unchanged content, as after {@code notifyChanged}, the {@code scrolled} one
+ * binds a different preference into each row, as while scrolling.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CustomPreferenceBenchmark {
+
+    private static final int ROWS_ON_SCREEN = 12;
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("CustomPreference");
+
+    private Context mContext;
+    private ListView mParent;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mParent = new ListView(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        RowViewFactories.register(CustomPreference.class, null);
+        RowViewFactories.register(SwitchPreference.class, null);
+    }
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void switchConstructor() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            sReport.add(Benchmark.measure("SwitchPreference.<init>", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            new SwitchPreference(mContext);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void onCreateView() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final CustomPreference[] preferences = createPreferences(size);
+            sReport.add(Benchmark.measure("CustomPreference.onCreateView", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            preferences[index % preferences.length].onCreateView(mParent);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void switchOnCreateView() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            sReport.add(Benchmark.measure("SwitchPreference.onCreateView", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            preferences[index % preferences.length].onCreateView(mParent);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void onCreateViewFactory() {
+        RowViewFactories.register(CustomPreference.class, OriginRowViewFactory.PLAIN);
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final CustomPreference[] preferences = createPreferences(size);
+            sReport.add(Benchmark.measure("CustomPreference.onCreateView factory", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            preferences[index % preferences.length].onCreateView(mParent);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void switchOnCreateViewFactory() {
+        RowViewFactories.register(SwitchPreference.class, OriginRowViewFactory.SWITCH);
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            sReport.add(Benchmark.measure("SwitchPreference.onCreateView factory", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            preferences[index % preferences.length].onCreateView(mParent);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void onBindView() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final CustomPreference[] preferences = createPreferences(size);
+            final View[] rows = createRows(preferences);
+            sReport.add(Benchmark.measure("CustomPreference.onBindView", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].onBindView(rows[row]);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void switchOnBindView() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            final View[] rows = createRows(preferences);
+            sReport.add(Benchmark.measure("SwitchPreference.onBindView", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].onBindView(rows[row]);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void switchOnBindViewScrolled() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            // As many rows as a screen shows, recycled between the preferences.
+            final View[] rows = createRows(preferences, Math.min(size, ROWS_ON_SCREEN));
+            sReport.add(Benchmark.measure("SwitchPreference.onBindView scrolled", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            preferences[index % preferences.length]
+                                    .onBindView(rows[index % rows.length]);
+                        }
+                    }));
+        }
+    }
+
+    private View[] createRows(CustomPreference[] preferences, int count) {
+        View[] rows = new View[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = preferences[i].onCreateView(mParent);
+        }
+        return rows;
+    }
+
+    private View[] createRows(CustomPreference[] preferences) {
+        View[] rows = new View[preferences.length];
+        for (int i = 0; i < preferences.length; i++) {
+            rows[i] = preferences[i].onCreateView(mParent);
+        }
+        return rows;
+    }
+
+    private CustomPreference[] createPreferences(int size) {
+        CustomPreference[] preferences = new CustomPreference[size];
+        for (int i = 0; i < size; i++) {
+            CustomPreference preference = new CustomPreference(mContext);
+            preference.setKey("pref_key_" + i);
+            preference.setTitle("Title " + i);
+            preference.setSummary("Summary " + i);
+            preferences[i] = preference;
+        }
+        return preferences;
+    }
+
+    private SwitchPreference[] createSwitches(int size) {
+        SwitchPreference[] preferences = new SwitchPreference[size];
+        for (int i = 0; i < size; i++) {
+            SwitchPreference preference = new SwitchPreference(mContext);
+            preference.setKey("pref_key_switch_" + i);
+            preference.setTitle("Switch " + i);
+            preference.setSummaryOn("On " + i);
+            preference.setSummaryOff("Off " + i);
+            preferences[i] = preference;
+        }
+        return preferences;
+    }
+}
@@ -0,0 +1,107 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Boolean reads and writes of {@link MappedPreferenceStore} compared to the XML backed
+ * {@link SharedPreferences}, with 10,000 keys in the file.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class MappedPreferenceStoreBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("MappedPreferenceStore");
+
+    private static final String NAME = "benchmark_prefs";
+    private static final int KEYS = 10000;
+    // Every commit rewrites the whole XML file, keep the run short.
+    private static final int COMMIT_OPERATIONS = 500;
+
+    private final String[] mKeys = new String[KEYS];
+    private SharedPreferences mSharedPreferences;
+    private MappedPreferenceStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        mSharedPreferences = context.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = mSharedPreferences.edit();
+        for (int i = 0; i < KEYS; i++) {
+            mKeys[i] = "pref_key_switch_" + i;
+            editor.putBoolean(mKeys[i], i % 2 == 0);
+        }
+        editor.commit();
+        // Migrates the keys written above.
+        mStore = MappedPreferenceStore.open(context, NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mStore.close();
+    }
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void read() {
+        sReport.add(Benchmark.measure("SharedPreferences.getBoolean", KEYS,
+                new Benchmark.Operation() {
+                    @Override
+                    public void run(int index) {
+                        mSharedPreferences.getBoolean(mKeys[index % KEYS], false);
+                    }
+                }));
+        sReport.add(Benchmark.measure("MappedPreferenceStore.getBoolean", KEYS,
+                new Benchmark.Operation() {
+                    @Override
+                    public void run(int index) {
+                        mStore.getBoolean(mKeys[index % KEYS], false);
+                    }
+                }));
+    }
+
+    @Test
+    public void write() {
+        sReport.add(Benchmark.measure("SharedPreferences.putBoolean apply", KEYS,
+                new Benchmark.Operation() {
+                    @Override
+                    public void run(int index) {
+                        mSharedPreferences.edit()
+                                .putBoolean(mKeys[index % KEYS], index % 3 == 0)
+                                .apply();
+                    }
+                }));
+        sReport.add(Benchmark.measure("SharedPreferences.putBoolean commit", KEYS,
+                COMMIT_OPERATIONS, new Benchmark.Operation() {
+                    @Override
+                    public void run(int index) {
+                        mSharedPreferences.edit()
+                                .putBoolean(mKeys[index % KEYS], index % 3 == 0)
+                                .commit();
+                    }
+                }));
+        sReport.add(Benchmark.measure("MappedPreferenceStore.putBoolean", KEYS,
+                new Benchmark.Operation() {
+                    @Override
+                    public void run(int index) {
+                        mStore.putBoolean(mKeys[index % KEYS], index % 3 == 0);
+                    }
+                }));
+    }
+}
@@ -0,0 +1,71 @@
+package com.gome.preference;
+
+import android.content.Context;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Prefix queries against a {@link PreferenceSearchIndex}, compared to walking the titles and
+ * summaries of every preference per query.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PreferenceSearchIndexBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("PreferenceSearchIndex");
+
+    // Every scan walks the whole screen, keep the run short.
+    private static final int LINEAR_OPERATIONS = 500;
+
+    private static final String[] QUERIES = {"aut", "delete lim", "storage 12", "sw"};
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void query() {
+        final Context context = RuntimeEnvironment.application;
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final PreferenceSearchIndex.Builder builder = new PreferenceSearchIndex.Builder(
+                    context);
+            final String[][] texts = new String[size][];
+            for (int i = 0; i < size; i++) {
+                texts[i] = new String[]{"Auto delete " + i, "Storage limit " + (i % 100),
+                        "Switch " + i};
+                builder.add("screen" + (i % 10), null, "pref_key_" + i, texts[i]);
+            }
+            final PreferenceSearchIndex searchIndex = builder.build();
+            sReport.add(Benchmark.measure("PreferenceSearchIndex.query", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            searchIndex.query(QUERIES[index % QUERIES.length]);
+                        }
+                    }));
+            sReport.add(Benchmark.measure("linear text scan", size, LINEAR_OPERATIONS,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            final String query = QUERIES[index % QUERIES.length];
+                            for (String[] preference : texts) {
+                                for (String text : preference) {
+                                    if (text.toLowerCase().contains(query)) {
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    }));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.preference.PreferenceScreen;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Cost of {@link TwoStatePreference#setChecked(boolean)} for both hierarchies, with the
+ * preferences attached to a screen so every toggle persists to the SharedPreferences.
+ * <p>
+ * The coalesced variants buffer the writes in the {@link PreferenceWriteBuffer} and flush
+ * once per pass over the screen, standing in for one flush per frame. The state table variant
+ * binds every preference to one {@link TwoStateTable} persisted as a single blob.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class TwoStatePreferenceBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("TwoStatePreference");
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_IMMEDIATE);
+    }
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void setChecked() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            sReport.add(Benchmark.measure("SwitchPreference.setChecked", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            SwitchPreference preference = preferences[index % preferences.length];
+                            preference.setChecked(!preference.isChecked());
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void setCheckedCoalesced() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_INTERVAL);
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = createSwitches(size);
+            sReport.add(Benchmark.measure("SwitchPreference.setChecked coalesced", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].setChecked(!preferences[row].isChecked());
+                            if (row == preferences.length - 1) {
+                                PreferenceWriteBuffer.flush();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void setCheckedStateTable() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_INTERVAL);
+        for (int size : Benchmark.SCREEN_SIZES) {
+            TwoStateTable table = new TwoStateTable(
+                    PreferenceManager.getDefaultSharedPreferences(mContext),
+                    "benchmark_table_" + size);
+            final SwitchPreference[] preferences = createSwitches(size);
+            for (SwitchPreference preference : preferences) {
+                preference.setStateTable(table);
+            }
+            sReport.add(Benchmark.measure("SwitchPreference.setChecked state table", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].setChecked(!preferences[row].isChecked());
+                            if (row == preferences.length - 1) {
+                                PreferenceWriteBuffer.flush();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void supportSetChecked() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final com.gome.preference.support.SwitchPreference[] preferences =
+                    createSupportSwitches(size);
+            sReport.add(Benchmark.measure("support.SwitchPreference.setChecked", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            com.gome.preference.support.SwitchPreference preference =
+                                    preferences[index % preferences.length];
+                            preference.setChecked(!preference.isChecked());
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void supportSetCheckedCoalesced() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_INTERVAL);
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final com.gome.preference.support.SwitchPreference[] preferences =
+                    createSupportSwitches(size);
+            sReport.add(Benchmark.measure("support.SwitchPreference.setChecked coalesced", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].setChecked(!preferences[row].isChecked());
+                            if (row == preferences.length - 1) {
+                                PreferenceWriteBuffer.flush();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    private SwitchPreference[] createSwitches(int size) {
+        // The Context constructor of the framework PreferenceManager is hidden.
+        PreferenceManager manager = ReflectionHelpers.callConstructor(PreferenceManager.class,
+                ReflectionHelpers.ClassParameter.from(Context.class, mContext));
+        PreferenceScreen screen = manager.createPreferenceScreen(mContext);
+        SwitchPreference[] preferences = new SwitchPreference[size];
+        for (int i = 0; i < size; i++) {
+            SwitchPreference preference = new SwitchPreference(mContext);
+            preference.setKey("pref_key_switch_" + i);
+            screen.addPreference(preference);
+            preferences[i] = preference;
+        }
+        return preferences;
+    }
+
+    private com.gome.preference.support.SwitchPreference[] createSupportSwitches(int size) {
+        android.support.v7.preference.PreferenceManager manager =
+                new android.support.v7.preference.PreferenceManager(mContext);
+        android.support.v7.preference.PreferenceScreen screen =
+                manager.createPreferenceScreen(mContext);
+        com.gome.preference.support.SwitchPreference[] preferences =
+                new com.gome.preference.support.SwitchPreference[size];
+        for (int i = 0; i < size; i++) {
+            com.gome.preference.support.SwitchPreference preference =
+                    new com.gome.preference.support.SwitchPreference(mContext);
+            preference.setKey("pref_key_support_switch_" + i);
+            screen.addPreference(preference);
+            preferences[i] = preference;
+        }
+        return preferences;
+    }
+}
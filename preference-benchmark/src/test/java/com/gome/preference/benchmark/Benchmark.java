@@ -0,0 +1,144 @@
+package com.gome.preference.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal measuring loop for the preference benchmarks.
+ * <p>
+ * Every benchmark is an {@link Operation} that is invoked with a running index so it can
+ * walk over the rows of a screen. The loop is warmed up first, then each invocation is
+ * timed individually so latency percentiles can be reported next to the throughput.
+ * Allocations are taken from the per thread allocation counter of the JVM, which is
+ * cheap enough to read only around the measured loop.
+ */
+public final class Benchmark {
+
+    /**
+     * Screen sizes (number of preferences) every benchmark is run against.
+     */
+    public static final int[] SCREEN_SIZES = {10, 1000, 10000};
+
+    /**
+     * Lower bound for the number of measured operations, so small screens are walked
+     * several times and still produce stable percentiles.
+     */
+    private static final int MIN_OPERATIONS = 20000;
+
+    private static final int MAX_WARMUP_OPERATIONS = 5000;
+
+    public interface Operation {
+        /**
+         * @param index Running index of the operation, starting at 0.
+         */
+        void run(int index);
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Measures {@code operation} on a screen of {@code screenSize} rows using the default
+     * number of operations.
+     */
+    public static Result measure(String name, int screenSize, Operation operation) {
+        return measure(name, screenSize, Math.max(screenSize, MIN_OPERATIONS), operation);
+    }
+
+    /**
+     * Measures {@code operations} invocations of {@code operation}.
+     */
+    public static Result measure(String name, int screenSize, int operations,
+                                 Operation operation) {
+        final int warmup = Math.min(operations, MAX_WARMUP_OPERATIONS);
+        for (int i = 0; i < warmup; i++) {
+            operation.run(i);
+        }
+        System.gc();
+
+        final long[] latencies = new long[operations];
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            final long t0 = System.nanoTime();
+            operation.run(i);
+            latencies[i] = System.nanoTime() - t0;
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocatedAfter = allocatedBytes();
+
+        Arrays.sort(latencies);
+        final long bytesPerOp = allocatedBefore < 0 || allocatedAfter < 0
+                ? -1 : (allocatedAfter - allocatedBefore) / operations;
+        return new Result(name, screenSize, operations, elapsed,
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[operations - 1], bytesPerOp);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()
+                    && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Outcome of a single {@link #measure} call.
+     */
+    public static final class Result {
+        public final String name;
+        public final int screenSize;
+        public final int operations;
+        public final long elapsedNanos;
+        public final long p50Nanos;
+        public final long p90Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+        /**
+         * Bytes allocated per operation, or -1 if the JVM cannot tell.
+         */
+        public final long bytesPerOp;
+
+        Result(String name, int screenSize, int operations, long elapsedNanos, long p50Nanos,
+               long p90Nanos, long p99Nanos, long maxNanos, long bytesPerOp) {
+            this.name = name;
+            this.screenSize = screenSize;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public double opsPerSecond() {
+            return operations * 1e9 / elapsedNanos;
+        }
+
+        static String header() {
+            return String.format(Locale.US, "%-44s %7s %12s %10s %10s %10s %10s %10s",
+                    "benchmark", "rows", "ops/s", "p50(us)", "p90(us)", "p99(us)",
+                    "max(us)", "B/op");
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-44s %7d %12.0f %10.2f %10.2f %10.2f %10.2f %10d",
+                    name, screenSize, opsPerSecond(), p50Nanos / 1e3, p90Nanos / 1e3,
+                    p99Nanos / 1e3, maxNanos / 1e3, bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.gome.preference.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the {@link Benchmark.Result}s of one benchmark class and prints them as a table.
+ * <p>
+ * When the {@code benchmark.outputDir} system property is set (the Gradle build does this)
+ * the table is also written to {@code <outputDir>/<name>.txt}, so runs before and after a
+ * change can be diffed.
+ */
+public final class BenchmarkReport {
+
+    private final String mName;
+    private final List<Benchmark.Result> mResults = new ArrayList<>();
+
+    public BenchmarkReport(String name) {
+        mName = name;
+    }
+
+    public void add(Benchmark.Result result) {
+        mResults.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Prints the collected results and writes them to the output directory, if any.
+     */
+    public void publish() throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append(Benchmark.Result.header()).append('\n');
+        for (Benchmark.Result result : mResults) {
+            table.append(result).append('\n');
+        }
+        System.out.println();
+        System.out.println("== " + mName + " ==");
+        System.out.print(table);
+
+        String outputDir = System.getProperty("benchmark.outputDir");
+        if (outputDir == null) {
+            return;
+        }
+        File dir = new File(outputDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        Writer writer = new FileWriter(new File(dir, mName + ".txt"));
+        try {
+            writer.write(table.toString());
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceViewHolder;
+import android.support.v7.preference.PreferenceViewHolders;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Binding cost of the {@code support} {@link CustomPreference} hierarchy, as driven by
+ * {@link android.support.v7.preference.PreferenceGroupAdapter} while the RecyclerView scrolls,
+ * and the cost of creating the rows of a category up front or as descriptors of a
+ * {@link LazyPreferenceCategory}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CustomPreferenceBenchmark {
+
+    // Every operation creates the rows of a whole category.
+    private static final int CATEGORY_OPERATIONS = 20;
+
+    private static final BenchmarkReport sReport =
+            new BenchmarkReport("support.CustomPreference");
+
+    private Context mContext;
+    private RecyclerView mParent;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mParent = new RecyclerView(mContext);
+    }
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void onBindViewHolder() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final CustomPreference[] preferences = new CustomPreference[size];
+            for (int i = 0; i < size; i++) {
+                CustomPreference preference = new CustomPreference(mContext);
+                preference.setKey("pref_key_" + i);
+                preference.setTitle("Title " + i);
+                preference.setSummary("Summary " + i);
+                preferences[i] = preference;
+            }
+            final PreferenceViewHolder[] holders = createHolders(preferences);
+            sReport.add(Benchmark.measure("support.CustomPreference.onBindViewHolder", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].onBindViewHolder(holders[row]);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void switchOnBindViewHolder() {
+        for (int size : Benchmark.SCREEN_SIZES) {
+            final SwitchPreference[] preferences = new SwitchPreference[size];
+            for (int i = 0; i < size; i++) {
+                SwitchPreference preference = new SwitchPreference(mContext);
+                preference.setKey("pref_key_switch_" + i);
+                preference.setTitle("Switch " + i);
+                preference.setSummaryOn("On " + i);
+                preference.setSummaryOff("Off " + i);
+                preferences[i] = preference;
+            }
+            final PreferenceViewHolder[] holders = createHolders(preferences);
+            sReport.add(Benchmark.measure("support.SwitchPreference.onBindViewHolder", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            int row = index % preferences.length;
+                            preferences[row].onBindViewHolder(holders[row]);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void createCategoryRows() {
+        for (final int size : Benchmark.SCREEN_SIZES) {
+            sReport.add(Benchmark.measure("support.CustomPreference category rows", size,
+                    CATEGORY_OPERATIONS, new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            Preference[] preferences = new Preference[size];
+                            for (int i = 0; i < size; i++) {
+                                preferences[i] = new CustomPreference(mContext);
+                                preferences[i].setKey("pref_key_" + i);
+                                preferences[i].setTitle(android.R.string.ok);
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void createLazyCategoryRows() {
+        for (final int size : Benchmark.SCREEN_SIZES) {
+            sReport.add(Benchmark.measure("support.LazyPreferenceCategory rows", size,
+                    CATEGORY_OPERATIONS, new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            LazyPreferenceCategory category = new LazyPreferenceCategory(mContext);
+                            for (int i = 0; i < size; i++) {
+                                category.addDescriptor(new PreferenceDescriptor("pref_key_" + i,
+                                        CustomPreference.class, android.R.string.ok));
+                            }
+                        }
+                    }));
+        }
+    }
+
+    private PreferenceViewHolder[] createHolders(Preference[] preferences) {
+        PreferenceViewHolder[] holders = new PreferenceViewHolder[preferences.length];
+        LayoutInflater inflater = LayoutInflater.from(mContext);
+        for (int i = 0; i < preferences.length; i++) {
+            holders[i] = PreferenceViewHolders.create(createRow(inflater, preferences[i]));
+        }
+        return holders;
+    }
+
+    /**
+     * Mirrors {@code PreferenceGroupAdapter.onCreateViewHolder}.
+     */
+    private View createRow(LayoutInflater inflater, Preference preference) {
+        View view = inflater.inflate(preference.getLayoutResource(), mParent, false);
+        ViewGroup widgetFrame = (ViewGroup) view.findViewById(android.R.id.widget_frame);
+        if (widgetFrame != null) {
+            if (preference.getWidgetLayoutResource() != 0) {
+                inflater.inflate(preference.getWidgetLayoutResource(), widgetFrame);
+            } else {
+                widgetFrame.setVisibility(View.GONE);
+            }
+        }
+        return view;
+    }
+}
@@ -0,0 +1,78 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.v7.preference.PreferenceCategory;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.gome.preference.benchmark.Benchmark;
+import com.gome.preference.benchmark.BenchmarkReport;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Looking up {@code support} preferences by key through the {@link KeyIndex} of their
+ * manager, compared to {@code PreferenceManager.findPreference}, which walks the hierarchy.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class KeyIndexBenchmark {
+
+    private static final int[] SCREEN_SIZES = {100, 1000, 10000};
+
+    private static final int PREFERENCES_PER_CATEGORY = 20;
+
+    // Every search walks the whole screen, keep the run short.
+    private static final int LINEAR_OPERATIONS = 500;
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("support.KeyIndex");
+
+    @AfterClass
+    public static void publish() throws Exception {
+        sReport.publish();
+    }
+
+    @Test
+    public void findPreference() {
+        final Context context = RuntimeEnvironment.application;
+        for (int size : SCREEN_SIZES) {
+            final PreferenceManager manager = new PreferenceManager(context);
+            final PreferenceScreen screen = manager.createPreferenceScreen(context);
+            manager.setPreferences(screen);
+            final String[] keys = new String[size];
+            PreferenceCategory category = null;
+            for (int i = 0; i < size; i++) {
+                if (i % PREFERENCES_PER_CATEGORY == 0) {
+                    category = new PreferenceCategory(context);
+                    screen.addPreference(category);
+                }
+                keys[i] = "pref_key_" + i;
+                final CustomPreference preference = new CustomPreference(context);
+                preference.setKey(keys[i]);
+                preference.setPersistent(false);
+                category.addPreference(preference);
+            }
+            // Visits the rows in a scattered order, the searches are not all near the top.
+            final int stride = size / PREFERENCES_PER_CATEGORY + 1;
+            sReport.add(Benchmark.measure("support.KeyIndex.findPreference", size,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            KeyIndex.findPreference(manager, keys[index * stride % keys.length]);
+                        }
+                    }));
+            sReport.add(Benchmark.measure("PreferenceManager.findPreference", size,
+                    LINEAR_OPERATIONS, new Benchmark.Operation() {
+                        @Override
+                        public void run(int index) {
+                            manager.findPreference(keys[index * stride % keys.length]);
+                        }
+                    }));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+# Preference hierarchies compiled by preference-compiler.gradle are loaded by name.
+-keep class com.gome.preference.compiled.** {
+    <init>();
+}
+
+# Called reflectively by PreferenceInternals.setNoCommit around compiled hierarchies.
+-keepclassmembers class android.support.v7.preference.PreferenceManager {
+    private void setNoCommit(boolean);
+}
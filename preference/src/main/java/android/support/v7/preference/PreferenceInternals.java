@@ -0,0 +1,67 @@
+package android.support.v7.preference;
+
+import android.util.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Gives an adapter that lists the rows of a hierarchy itself the access
+ * {@link PreferenceGroupAdapter} has to the package private parts of the 25.x support
+ * library.
+ */
+public final class PreferenceInternals {
+
+    private static final String TAG = "PreferenceInternals";
+
+    // PreferenceManager.setNoCommit(boolean), private in the 25.x support library.
+    private static Method sSetNoCommit;
+    private static boolean sSetNoCommitResolved;
+
+    private PreferenceInternals() {
+    }
+
+    /**
+     * Makes the preferences attached to {@code manager} write to one shared editor, which is
+     * applied once this is called again with {@code false}, as
+     * {@link PreferenceManager#inflateFromResource} does around inflation. Without access to
+     * the method the values are applied one by one, as if this was not called.
+     */
+    public static void setNoCommit(PreferenceManager manager, boolean noCommit) {
+        if (!sSetNoCommitResolved) {
+            sSetNoCommitResolved = true;
+            try {
+                final Method method = PreferenceManager.class.getDeclaredMethod("setNoCommit",
+                        boolean.class);
+                method.setAccessible(true);
+                sSetNoCommit = method;
+            } catch (NoSuchMethodException | RuntimeException e) {
+                Log.w(TAG, "Cannot batch the commits of the default values", e);
+            }
+        }
+        if (sSetNoCommit == null) {
+            return;
+        }
+        try {
+            sSetNoCommit.invoke(manager, noCommit);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            Log.w(TAG, "Cannot batch the commits of the default values", e);
+        }
+    }
+
+    public static void sortPreferences(PreferenceGroup group) {
+        group.sortPreferences();
+    }
+
+    public static boolean isOnSameScreenAsChildren(PreferenceGroup group) {
+        return group.isOnSameScreenAsChildren();
+    }
+
+    /**
+     * Makes {@code preference} report its changes to {@code adapter}.
+     */
+    public static void setOnPreferenceChangeInternalListener(Preference preference,
+                                                             PreferenceGroupAdapter adapter) {
+        preference.setOnPreferenceChangeInternalListener(adapter);
+    }
+}
@@ -0,0 +1,18 @@
+package android.support.v7.preference;
+
+import android.view.View;
+
+/**
+ * Creates {@link PreferenceViewHolder}s for rows that are not inflated by
+ * {@link PreferenceGroupAdapter} itself. The constructor is package private in the 25.x
+ * support library.
+ */
+public final class PreferenceViewHolders {
+
+    private PreferenceViewHolders() {
+    }
+
+    public static PreferenceViewHolder create(View itemView) {
+        return new PreferenceViewHolder(itemView);
+    }
+}
@@ -0,0 +1,44 @@
+package com.gome.preference;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The single background thread this library does its off main thread work on, such as
+ * building rows ahead of time or decoding icons. Tasks run one at a time in submission order,
+ * at background priority.
+ */
+public final class BackgroundExecutor {
+
+    private static ExecutorService sExecutor;
+
+    private BackgroundExecutor() {
+    }
+
+    /**
+     * @return The executor, created on first use.
+     */
+    public static synchronized Executor get() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "CustomPreference-background");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
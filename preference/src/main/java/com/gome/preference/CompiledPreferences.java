@@ -0,0 +1,203 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.preference.Preference;
+import android.preference.PreferenceActivity;
+import android.preference.PreferenceFragment;
+import android.preference.PreferenceGroup;
+import android.preference.PreferenceManager;
+import android.preference.PreferenceScreen;
+import android.support.annotation.Nullable;
+import android.support.annotation.XmlRes;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * Loads preference hierarchies compiled from XML by {@code preference-compiler.gradle}.
+ * <p>
+ * A compiled hierarchy is built by plain constructor and setter calls, without parsing the
+ * XML or looking up constructors reflectively. Use {@link #addPreferencesFromResource} in
+ * place of the method of the same name of the fragment or activity:
+ * <pre>
+ * CompiledPreferences.addPreferencesFromResource(this, R.xml.preferences);
+ * </pre>
+ * Files that were not compiled are inflated from XML as before, so this is always safe to
+ * call.
+ */
+public final class CompiledPreferences {
+
+    private static final String TAG = "CompiledPreferences";
+
+    private static final String PACKAGE = "com.gome.preference.compiled.";
+    private static final String CLASS_PREFIX = "Xml_";
+
+    // Builders by resource id, NOT_COMPILED for resources that were not compiled.
+    private static final SparseArray<Object> sBuilders = new SparseArray<>();
+    private static final Object NOT_COMPILED = new Object();
+
+    // PreferenceManager.setNoCommit(boolean), private in the framework.
+    private static Method sSetNoCommit;
+    private static boolean sSetNoCommitResolved;
+
+    /**
+     * Builds a compiled hierarchy. Implemented by the generated classes.
+     */
+    public interface Builder {
+        /**
+         * Adds the preferences of the compiled file to {@code root}.
+         */
+        void build(Context context, PreferenceGroup root, Dependencies dependencies);
+    }
+
+    /**
+     * The dependencies of a compiled hierarchy. They can only be set once the hierarchy is
+     * attached to its screen, so the builder collects them here.
+     */
+    public static final class Dependencies {
+
+        private final ArrayList<Preference> mDependents = new ArrayList<>();
+        private final ArrayList<String> mKeys = new ArrayList<>();
+
+        public void add(Preference dependent, String dependencyKey) {
+            mDependents.add(dependent);
+            mKeys.add(dependencyKey);
+        }
+
+        /**
+         * Sets the collected dependencies. A dependent may already have registered with its
+         * dependency when it was attached, registering it again does not change anything.
+         */
+        void apply() {
+            for (int i = 0; i < mDependents.size(); i++) {
+                mDependents.get(i).setDependency(mKeys.get(i));
+            }
+        }
+    }
+
+    private CompiledPreferences() {
+    }
+
+    /**
+     * Returns the builder compiled from {@code xmlResId}.
+     *
+     * @return The builder, or {@code null} if the file was not compiled.
+     */
+    @Nullable
+    public static Builder getBuilder(Context context, @XmlRes int xmlResId) {
+        return findBuilder(context, xmlResId, Builder.class);
+    }
+
+    /**
+     * Like {@link PreferenceFragment#addPreferencesFromResource(int)}, but builds the
+     * compiled hierarchy if there is one.
+     */
+    public static void addPreferencesFromResource(PreferenceFragment fragment,
+                                                  @XmlRes int xmlResId) {
+        final Context context = fragment.getActivity();
+        final Builder builder = getBuilder(context, xmlResId);
+        if (builder == null) {
+            fragment.addPreferencesFromResource(xmlResId);
+            return;
+        }
+        final Dependencies dependencies = new Dependencies();
+        fragment.setPreferenceScreen(build(builder, context, fragment.getPreferenceManager(),
+                fragment.getPreferenceScreen(), dependencies));
+        dependencies.apply();
+    }
+
+    /**
+     * Like {@link PreferenceActivity#addPreferencesFromResource(int)}, but builds the
+     * compiled hierarchy if there is one.
+     */
+    @SuppressWarnings("deprecation")
+    public static void addPreferencesFromResource(PreferenceActivity activity,
+                                                  @XmlRes int xmlResId) {
+        final Builder builder = getBuilder(activity, xmlResId);
+        if (builder == null) {
+            activity.addPreferencesFromResource(xmlResId);
+            return;
+        }
+        final Dependencies dependencies = new Dependencies();
+        activity.setPreferenceScreen(build(builder, activity, activity.getPreferenceManager(),
+                activity.getPreferenceScreen(), dependencies));
+        dependencies.apply();
+    }
+
+    /**
+     * Looks up the class compiled from {@code xmlResId}, for this class and its
+     * {@code support} counterpart.
+     *
+     * @return The builder, or {@code null} if the file was not compiled.
+     */
+    @Nullable
+    public static <T> T findBuilder(Context context, @XmlRes int xmlResId, Class<T> type) {
+        Object builder;
+        synchronized (sBuilders) {
+            builder = sBuilders.get(xmlResId);
+        }
+        if (builder == null) {
+            builder = NOT_COMPILED;
+            final String name = context.getResources().getResourceEntryName(xmlResId);
+            try {
+                builder = Class.forName(PACKAGE + CLASS_PREFIX + name).newInstance();
+            } catch (ClassNotFoundException e) {
+                // Not compiled, inflated from XML.
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException("Cannot create the builder of " + name, e);
+            }
+            synchronized (sBuilders) {
+                sBuilders.put(xmlResId, builder);
+            }
+        }
+        return type.isInstance(builder) ? type.cast(builder) : null;
+    }
+
+    private static PreferenceScreen build(Builder builder, Context context,
+                                          PreferenceManager manager,
+                                          @Nullable PreferenceScreen screen,
+                                          Dependencies dependencies) {
+        if (screen == null) {
+            screen = manager.createPreferenceScreen(context);
+        }
+        // The default values are written in one commit, as when inflating the XML.
+        setNoCommit(manager, true);
+        try {
+            builder.build(context, screen, dependencies);
+        } finally {
+            setNoCommit(manager, false);
+        }
+        return screen;
+    }
+
+    /**
+     * Makes the preferences attached to {@code manager} write to one shared editor, which is
+     * applied once this is called again with {@code false}, as
+     * {@code PreferenceManager.inflateFromResource} does around inflation. Without access to
+     * the method the values are applied one by one, as if this was not called.
+     */
+    private static void setNoCommit(PreferenceManager manager, boolean noCommit) {
+        if (!sSetNoCommitResolved) {
+            sSetNoCommitResolved = true;
+            try {
+                final Method method = PreferenceManager.class.getDeclaredMethod("setNoCommit",
+                        boolean.class);
+                method.setAccessible(true);
+                sSetNoCommit = method;
+            } catch (NoSuchMethodException | RuntimeException e) {
+                Log.w(TAG, "Cannot batch the commits of the default values", e);
+            }
+        }
+        if (sSetNoCommit == null) {
+            return;
+        }
+        try {
+            sSetNoCommit.invoke(manager, noCommit);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            Log.w(TAG, "Cannot batch the commits of the default values", e);
+        }
+    }
+}
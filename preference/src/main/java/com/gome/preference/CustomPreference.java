@@ -24,21 +24,17 @@ package com.gome.preference;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
+import android.preference.Preference;
+import android.preference.PreferenceManager;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ListView;
 
 import android.widget.TextView;
 
-import static android.content.Context.LAYOUT_INFLATER_SERVICE;
 import static android.os.Build.VERSION_CODES.LOLLIPOP;
-import static android.text.TextUtils.isEmpty;
-import static android.view.View.GONE;
-import static android.view.View.VISIBLE;
 
 /**
  * Represents the basic Preference UI building
@@ -78,14 +74,22 @@ import static android.view.View.VISIBLE;
  */
 public class CustomPreference extends android.preference.Preference {
 
+    private static final int[] ATTRS = {android.R.attr.icon};
+
     TextView titleView;
     TextView summaryView;
 
-    View imageFrame;
-
     private int iconResId;
     private Drawable icon;
 
+    private PreferenceDataStore mPreferenceDataStore;
+
+    // The index of the hierarchy this preference is attached to.
+    private KeyIndex mKeyIndex;
+
+    // The row of the last bind, see getBoundRow().
+    private View mBoundRow;
+
     public CustomPreference(Context context) {
         super(context);
         init(context, null, 0, 0);
@@ -108,63 +112,222 @@ public class CustomPreference extends android.preference.Preference {
     }
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
-        TypedArray typedArray =
-                context.obtainStyledAttributes(attrs, new int[]{android.R.attr.icon}, defStyleAttr,
-                        defStyleRes);
-        iconResId = typedArray.getResourceId(0, 0);
-        typedArray.recycle();
+        StyledAttributeCache.Values values = StyledAttributeCache.obtain(context, attrs, ATTRS,
+                defStyleAttr, defStyleRes);
+        iconResId = values.getResourceId(0, 0);
+    }
+
+    /**
+     * Same as {@code super.getView}, timing the row creation and binding for
+     * {@link PreferenceMetrics}.
+     */
+    @Override
+    public View getView(View convertView, ViewGroup parent) {
+        if (convertView == null) {
+            final long start = PreferenceMetrics.start();
+            convertView = onCreateView(parent);
+            PreferenceMetrics.stop(PreferenceMetrics.ON_CREATE_VIEW, start);
+        }
+        final long start = PreferenceMetrics.start();
+        onBindView(convertView);
+        PreferenceMetrics.stop(PreferenceMetrics.ON_BIND_VIEW, start);
+        return convertView;
+    }
+
+    /**
+     * @return The layout the rows of this preference are built from. Not
+     * {@link #getLayoutResource()}, which the framework ties to recycling the rows.
+     */
+    int getRowLayoutResource() {
+        return R.layout.origin_preference;
     }
 
     @Override
     protected View onCreateView(ViewGroup parent) {
 //        super.onCreateView(parent);
-        LayoutInflater layoutInflater =
-                (LayoutInflater) getContext().getSystemService(LAYOUT_INFLATER_SERVICE);
-        View layout = layoutInflater.inflate(R.layout.origin_preference, parent, false);
-
-        ViewGroup widgetFrame = (ViewGroup) layout.findViewById(R.id.widget_frame);
-        int widgetLayoutResId = getWidgetLayoutResource();
-        if (widgetLayoutResId != 0) {
-            layoutInflater.inflate(widgetLayoutResId, widgetFrame);
+        Object rowType = RowViewFactories.getRowType(getClass(), getRowLayoutResource(),
+                getWidgetLayoutResource());
+        View row = RowViewPool.obtain(getContext(), rowType);
+        if (row != null) {
+            return row;
         }
-        widgetFrame.setVisibility(widgetLayoutResId != 0 ? VISIBLE : GONE);
-
-        return layout;
+        return RowViewFactories.createRow(getContext(), parent, rowType);
     }
 
+    /**
+     * Binds the row through its {@link PreferenceRowHolder}, which only touches the views whose
+     * content changed since the last bind. This replaces {@code super.onBindView}, which looks
+     * up and sets every view on each bind.
+     */
     @Override
     protected void onBindView(View view) {
-        super.onBindView(view);
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.BIND, getKey(), 0);
+        }
+        final PreferenceRowHolder holder = PreferenceRowHolder.get(view);
+        holder.boundPreference = this;
+        mBoundRow = view;
 
-        CharSequence title = getTitle();
-        titleView = (TextView) view.findViewById(R.id.title);
-        titleView.setText(title);
-        titleView.setVisibility(!isEmpty(title) ? VISIBLE : GONE);
+        titleView = holder.title;
+        holder.bindTitle(getTitle());
 //        titleView.setTypeface(getRobotoRegular(getContext()));
 
-        CharSequence summary = getSummary();
-        summaryView = (TextView) view.findViewById(R.id.summary);
-        summaryView.setText(summary);
-        summaryView.setVisibility(!isEmpty(summary) ? VISIBLE : GONE);
+        summaryView = holder.summary;
+        holder.bindSummary(getBoundSummary());
 //        summaryView.setTypeface(getRobotoRegular(getContext()));
 
-        if (icon == null && iconResId > 0) {
-            icon = getContext().getResources().getDrawable(iconResId);
+        holder.bindIcon(getIcon());
+
+        if (getShouldDisableView()) {
+            holder.bindEnabled(isEnabled());
         }
+    }
 
-        imageFrame = view.findViewById(R.id.icon_frame);
-        imageFrame.setVisibility(icon != null ? VISIBLE : GONE);
+    /**
+     * @return The row this preference was last bound to, or {@code null} if there is none or
+     * it has been bound to another preference since.
+     */
+    View getBoundRow() {
+        if (mBoundRow == null || PreferenceRowHolder.get(mBoundRow).boundPreference != this) {
+            return null;
+        }
+        return mBoundRow;
+    }
+
+    /**
+     * @return The text to show in the summary view, {@link #getSummary()} unless a subclass
+     * shows something else depending on its state.
+     */
+    CharSequence getBoundSummary() {
+        return getSummary();
+    }
+
+    /**
+     * Tells the dependents in one {@link DependencyIndex} batch, so their rows are refreshed
+     * with a single adapter notification.
+     */
+    @Override
+    public void notifyDependencyChange(boolean disableDependents) {
+        final long start = PreferenceMetrics.start();
+        DependencyIndex.beginBatch();
+        try {
+            super.notifyDependencyChange(disableDependents);
+        } finally {
+            DependencyIndex.endBatch();
+            PreferenceMetrics.stop(PreferenceMetrics.PROPAGATE_DEPENDENCY, start);
+        }
     }
 
+    @Override
+    protected void notifyChanged() {
+        if (!DependencyIndex.defer(this)) {
+            super.notifyChanged();
+        }
+    }
+
+    /**
+     * Notifies the adapter right away, bypassing a running dependency batch.
+     */
+    void dispatchChanged() {
+        super.notifyChanged();
+    }
+
+    @Override
+    protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+        super.onAttachedToHierarchy(preferenceManager);
+        removeFromKeyIndex();
+        mKeyIndex = KeyIndex.get(preferenceManager);
+        mKeyIndex.add(this);
+    }
+
+    @Override
+    protected void onPrepareForRemoval() {
+        super.onPrepareForRemoval();
+        removeFromKeyIndex();
+    }
+
+    @Override
+    public void setKey(String key) {
+        if (mKeyIndex != null) {
+            mKeyIndex.remove(this);
+        }
+        super.setKey(key);
+        if (mKeyIndex != null) {
+            mKeyIndex.add(this);
+        }
+    }
+
+    /**
+     * Looks {@code key} up in the {@link KeyIndex} of the hierarchy first, so registering the
+     * dependency does not walk the hierarchy.
+     */
+    @Override
+    protected Preference findPreferenceInHierarchy(String key) {
+        final CustomPreference preference = mKeyIndex != null ? mKeyIndex.find(key) : null;
+        return preference != null ? preference : super.findPreferenceInHierarchy(key);
+    }
+
+    void removeFromKeyIndex() {
+        if (mKeyIndex != null) {
+            mKeyIndex.remove(this);
+            mKeyIndex = null;
+        }
+    }
+
+    /**
+     * Sets a {@link PreferenceDataStore} to be used by this Preference instead of using
+     * {@link SharedPreferences}.
+     * <p>
+     * The data store will remain assigned even if the Preference is moved around the preference
+     * hierarchy. It will also override a data store set with
+     * {@link PreferenceDataStore#setDefault(PreferenceDataStore)}.
+     *
+     * @param dataStore The {@link PreferenceDataStore} to be used by this Preference.
+     */
+    public void setPreferenceDataStore(PreferenceDataStore dataStore) {
+        mPreferenceDataStore = dataStore;
+    }
+
+    /**
+     * Returns {@link PreferenceDataStore} used by this Preference. Returns {@code null} if
+     * {@link SharedPreferences} is used instead.
+     *
+     * @return The {@link PreferenceDataStore} used by this Preference or {@code null} if none.
+     */
+    public PreferenceDataStore getPreferenceDataStore() {
+        if (mPreferenceDataStore != null) {
+            return mPreferenceDataStore;
+        }
+        return PreferenceDataStore.getDefault();
+    }
+
+    /**
+     * Sets the icon from the shared {@link IconCache}. It is only decoded when it is first
+     * needed, usually when the row is bound.
+     */
     @Override
     public void setIcon(int iconResId) {
-        super.setIcon(iconResId);
+        if (iconResId == this.iconResId && icon == null) {
+            return;
+        }
+        super.setIcon((Drawable) null);
         this.iconResId = iconResId;
+        this.icon = null;
+        notifyChanged();
     }
 
     @Override
     public void setIcon(Drawable icon) {
-        super.setIcon(icon);
+        this.iconResId = 0;
         this.icon = icon;
+        super.setIcon(icon);
+    }
+
+    @Override
+    public Drawable getIcon() {
+        if (icon == null && iconResId != 0) {
+            icon = IconCache.getDrawable(getContext(), iconResId);
+        }
+        return icon;
     }
 }
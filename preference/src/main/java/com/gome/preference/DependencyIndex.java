@@ -0,0 +1,55 @@
+package com.gome.preference;
+
+/**
+ * The batching of dependency changes.
+ * <p>
+ * A {@link CustomPreference} tells its dependents about a change of its state inside a batch.
+ * The row changes of library preferences that causes are coalesced into one adapter
+ * notification at the end of the batch, instead of one per dependent. The dependents are the
+ * ones the framework registered for the preference, so dependents of any class, and a
+ * dependency changed with {@code setDependency}, are followed as usual. A
+ * {@link TwoStateBatch} runs the changes of many preferences in one batch. It is meant to be
+ * used from the main thread only.
+ */
+public final class DependencyIndex {
+
+    private static int sBatchDepth;
+    private static CustomPreference sDeferred;
+
+    private DependencyIndex() {
+    }
+
+    /**
+     * Starts a batch: row changes are held back until the matching {@link #endBatch()}.
+     * Batches nest.
+     */
+    static void beginBatch() {
+        sBatchDepth++;
+    }
+
+    /**
+     * Ends a batch. Ending the outermost one notifies the held back row changes at once.
+     */
+    static void endBatch() {
+        if (--sBatchDepth == 0 && sDeferred != null) {
+            final CustomPreference changed = sDeferred;
+            sDeferred = null;
+            // The framework adapter refreshes every row on any change.
+            changed.dispatchChanged();
+        }
+    }
+
+    /**
+     * @return Whether the change of {@code preference} is part of a batch and is notified at
+     * its end.
+     */
+    static boolean defer(CustomPreference preference) {
+        if (sBatchDepth == 0) {
+            return false;
+        }
+        if (sDeferred == null) {
+            sDeferred = preference;
+        }
+        return true;
+    }
+}
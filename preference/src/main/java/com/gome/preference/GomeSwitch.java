@@ -0,0 +1,337 @@
+package com.gome.preference;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.Checkable;
+import android.widget.Switch;
+
+/**
+ * The switch widget of both {@link SwitchPreference}s: a track and a thumb drawn directly,
+ * with optional on and off texts drawn inside the track.
+ * <p>
+ * Unlike the platform {@link Switch} it builds no text layouts, and its size only depends
+ * on the texts, so toggling never requests a layout. The toggle animation reuses one
+ * animator and only invalidates, without allocating per frame.
+ * <p>
+ * Its colors follow the theme: the checked track takes {@code colorControlActivated}, falling
+ * back to {@code colorAccent}, the unchecked one {@code colorControlNormal}, the thumb
+ * {@code colorSwitchThumbNormal} and the texts {@code textColorPrimaryInverse}.
+ */
+public class GomeSwitch extends View implements Checkable {
+
+    private static final int[] CHECKED_STATE_SET = {android.R.attr.state_checked};
+
+    private static final int ANIMATION_DURATION = 150;
+
+    // The theme attributes of each color, the first one the theme defines is used. The
+    // framework ones only resolve from Lollipop on.
+    private static final int[] TRACK_ON_ATTRS = {R.attr.colorControlActivated,
+            android.R.attr.colorControlActivated, R.attr.colorAccent, android.R.attr.colorAccent};
+    private static final int[] TRACK_OFF_ATTRS = {R.attr.colorControlNormal,
+            android.R.attr.colorControlNormal};
+    private static final int[] THUMB_ATTRS = {R.attr.colorSwitchThumbNormal};
+    private static final int[] TEXT_ATTRS = {android.R.attr.textColorPrimaryInverse};
+
+    // For themes that define none of them.
+    private static final int TRACK_ON_COLOR = 0xFF4CAF50;
+    private static final int TRACK_OFF_COLOR = 0xFFBDBDBD;
+    private static final int THUMB_COLOR = 0xFFFFFFFF;
+    private static final int TEXT_COLOR = 0xFFFFFFFF;
+
+    private final Paint mTrackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mTrackRect = new RectF();
+    private final ValueAnimator mAnimator = ValueAnimator.ofFloat(0, 1);
+
+    private final int mMinTrackWidth;
+    private final int mTrackHeight;
+    private final int mThumbPadding;
+
+    private int mTrackOnColor;
+    private int mTrackOffColor;
+
+    private CharSequence mTextOn;
+    private CharSequence mTextOff;
+    private float mTextOnWidth;
+    private float mTextOffWidth;
+    private int mTextWidth;
+
+    private boolean mChecked;
+    private boolean mBroadcasting;
+    // 0 with the thumb at the start, 1 at the end.
+    private float mPosition;
+    private float mAnimationStart;
+    private OnCheckedChangeListener mOnCheckedChangeListener;
+
+    /**
+     * Interface definition for a callback to be invoked when the checked state changed.
+     */
+    public interface OnCheckedChangeListener {
+        void onCheckedChanged(GomeSwitch switchView, boolean isChecked);
+    }
+
+    public GomeSwitch(Context context) {
+        this(context, null);
+    }
+
+    public GomeSwitch(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mMinTrackWidth = dp(40);
+        mTrackHeight = dp(22);
+        mThumbPadding = dp(2);
+        mTrackOnColor = resolveColor(TRACK_ON_ATTRS, TRACK_ON_COLOR);
+        mTrackOffColor = resolveColor(TRACK_OFF_ATTRS, TRACK_OFF_COLOR);
+        mThumbPaint.setColor(resolveColor(THUMB_ATTRS, THUMB_COLOR));
+        mTextPaint.setColor(resolveColor(TEXT_ATTRS, TEXT_COLOR));
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 10,
+                getResources().getDisplayMetrics()));
+        mAnimator.setDuration(ANIMATION_DURATION);
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float target = mChecked ? 1 : 0;
+                mPosition = mAnimationStart
+                        + (target - mAnimationStart) * animation.getAnimatedFraction();
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Sets the track colors of the two states, instead of the ones of the theme.
+     */
+    public void setTrackColors(int onColor, int offColor) {
+        mTrackOnColor = onColor;
+        mTrackOffColor = offColor;
+        invalidate();
+    }
+
+    public void setOnCheckedChangeListener(OnCheckedChangeListener listener) {
+        mOnCheckedChangeListener = listener;
+    }
+
+    /**
+     * Sets the text drawn in the track in the checked state. Only requests a layout if the
+     * switch has to grow or shrink for it.
+     */
+    public void setTextOn(CharSequence textOn) {
+        if (textOn != mTextOn) {
+            mTextOn = textOn;
+            onTextChanged();
+        }
+    }
+
+    public CharSequence getTextOn() {
+        return mTextOn;
+    }
+
+    /**
+     * Sets the text drawn in the track in the unchecked state. Only requests a layout if the
+     * switch has to grow or shrink for it.
+     */
+    public void setTextOff(CharSequence textOff) {
+        if (textOff != mTextOff) {
+            mTextOff = textOff;
+            onTextChanged();
+        }
+    }
+
+    public CharSequence getTextOff() {
+        return mTextOff;
+    }
+
+    private void onTextChanged() {
+        mTextOnWidth = measureText(mTextOn);
+        mTextOffWidth = measureText(mTextOff);
+        final int textWidth = (int) Math.ceil(Math.max(mTextOnWidth, mTextOffWidth));
+        if (textWidth != mTextWidth) {
+            mTextWidth = textWidth;
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private float measureText(CharSequence text) {
+        return text != null ? mTextPaint.measureText(text, 0, text.length()) : 0;
+    }
+
+    @Override
+    public boolean isChecked() {
+        return mChecked;
+    }
+
+    /**
+     * Changes the checked state, animating the thumb if the switch is on screen.
+     */
+    @Override
+    public void setChecked(boolean checked) {
+        if (mChecked == checked) {
+            return;
+        }
+        mChecked = checked;
+        refreshDrawableState();
+        if (ViewCompat.isLaidOut(this) && getWindowVisibility() == VISIBLE) {
+            mAnimator.cancel();
+            mAnimationStart = mPosition;
+            mAnimator.start();
+        } else {
+            jumpToCurrentState();
+        }
+
+        // Avoid infinite recursions if setChecked() is called from a listener.
+        if (mBroadcasting) {
+            return;
+        }
+        mBroadcasting = true;
+        if (mOnCheckedChangeListener != null) {
+            mOnCheckedChangeListener.onCheckedChanged(this, mChecked);
+        }
+        mBroadcasting = false;
+    }
+
+    @Override
+    public void toggle() {
+        setChecked(!mChecked);
+    }
+
+    @Override
+    public void jumpDrawablesToCurrentState() {
+        super.jumpDrawablesToCurrentState();
+        jumpToCurrentState();
+    }
+
+    private void jumpToCurrentState() {
+        mAnimator.cancel();
+        mPosition = mChecked ? 1 : 0;
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        jumpToCurrentState();
+    }
+
+    @Override
+    protected int[] onCreateDrawableState(int extraSpace) {
+        final int[] drawableState = super.onCreateDrawableState(extraSpace + 1);
+        if (mChecked) {
+            mergeDrawableStates(drawableState, CHECKED_STATE_SET);
+        }
+        return drawableState;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int thumbSize = mTrackHeight - 2 * mThumbPadding;
+        final int trackWidth = Math.max(mMinTrackWidth,
+                thumbSize + mTextWidth + 4 * mThumbPadding);
+        setMeasuredDimension(
+                resolveSize(trackWidth + getPaddingLeft() + getPaddingRight(), widthMeasureSpec),
+                resolveSize(mTrackHeight + getPaddingTop() + getPaddingBottom(),
+                        heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final float left = getPaddingLeft();
+        final float right = getWidth() - getPaddingRight();
+        final float top = getPaddingTop()
+                + (getHeight() - getPaddingTop() - getPaddingBottom() - mTrackHeight) / 2f;
+        final float radius = mTrackHeight / 2f;
+        mTrackRect.set(left, top, right, top + mTrackHeight);
+
+        final boolean rtl = getLayoutDirection() == LAYOUT_DIRECTION_RTL;
+        final float position = rtl ? 1 - mPosition : mPosition;
+        mTrackPaint.setColor(blend(mTrackOffColor, mTrackOnColor, mPosition));
+        mTrackPaint.setAlpha(isEnabled() ? 255 : 97);
+        canvas.drawRoundRect(mTrackRect, radius, radius, mTrackPaint);
+
+        final float thumbRadius = radius - mThumbPadding;
+        final float thumbX = left + radius + (right - left - 2 * radius) * position;
+        final float centerY = top + radius;
+
+        final boolean on = mPosition >= 0.5f;
+        final CharSequence text = on ? mTextOn : mTextOff;
+        if (text != null) {
+            // In the half of the track the thumb is not on.
+            final float textX = position >= 0.5f ? left + mThumbPadding * 2
+                    : right - mThumbPadding * 2 - (on ? mTextOnWidth : mTextOffWidth);
+            final float textY = centerY - (mTextPaint.descent() + mTextPaint.ascent()) / 2;
+            canvas.drawText(text, 0, text.length(), textX, textY, mTextPaint);
+        }
+        canvas.drawCircle(thumbX, centerY, thumbRadius, mThumbPaint);
+    }
+
+    private static int blend(int from, int to, float fraction) {
+        final int a = (int) (((from >>> 24) & 0xFF) * (1 - fraction)
+                + ((to >>> 24) & 0xFF) * fraction);
+        final int r = (int) (((from >> 16) & 0xFF) * (1 - fraction)
+                + ((to >> 16) & 0xFF) * fraction);
+        final int g = (int) (((from >> 8) & 0xFF) * (1 - fraction)
+                + ((to >> 8) & 0xFF) * fraction);
+        final int b = (int) ((from & 0xFF) * (1 - fraction) + (to & 0xFF) * fraction);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * @return The color the first of {@code attrs} the theme defines resolves to, the default
+     * color if it is a color state list, or {@code defValue} if the theme defines none.
+     */
+    private int resolveColor(int[] attrs, int defValue) {
+        final TypedValue value = new TypedValue();
+        for (int attr : attrs) {
+            if (!getContext().getTheme().resolveAttribute(attr, value, true)) {
+                continue;
+            }
+            if (value.type >= TypedValue.TYPE_FIRST_COLOR_INT
+                    && value.type <= TypedValue.TYPE_LAST_COLOR_INT) {
+                return value.data;
+            }
+            if (value.resourceId != 0) {
+                final ColorStateList colors =
+                        ContextCompat.getColorStateList(getContext(), value.resourceId);
+                if (colors != null) {
+                    return colors.getDefaultColor();
+                }
+            }
+        }
+        return defValue;
+    }
+
+    private int dp(int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                getResources().getDisplayMetrics());
+    }
+
+    @Override
+    public void onInitializeAccessibilityEvent(AccessibilityEvent event) {
+        super.onInitializeAccessibilityEvent(event);
+        event.setClassName(Switch.class.getName());
+        event.setChecked(mChecked);
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setClassName(Switch.class.getName());
+        info.setCheckable(true);
+        info.setChecked(mChecked);
+        final CharSequence text = mChecked ? mTextOn : mTextOff;
+        if (text != null) {
+            info.setText(text);
+        }
+    }
+}
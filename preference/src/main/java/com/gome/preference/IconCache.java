@@ -0,0 +1,282 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+
+import java.io.File;
+
+/**
+ * Process wide cache of preference icons, keyed by resource id (or file) and theme.
+ * <p>
+ * Only the {@link Drawable.ConstantState} of an icon is cached, and every row gets its own
+ * drawable from it, so rows using the same icon share the decoded bitmap instead of each
+ * holding a copy. Call {@link Drawable#mutate()} before changing a drawable from the cache.
+ * <p>
+ * The cache is bounded by the estimated size of the cached bitmaps, see
+ * {@link #setMaxSize(int)}. Large or file based icons can be decoded on the
+ * {@link BackgroundExecutor} with the {@code loadDrawable} methods. The hit, miss and eviction
+ * counts are kept for tuning the size.
+ */
+public final class IconCache {
+
+    // Estimated size of drawables without intrinsic size, such as colors or shapes.
+    private static final int DEFAULT_ENTRY_SIZE = 1024;
+    private static final int MAX_DEFAULT_SIZE = 8 * 1024 * 1024;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Replaced by setMaxSize, read from the BackgroundExecutor.
+    private static volatile LruCache<Key, Entry> sCache = createCache(
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 32, MAX_DEFAULT_SIZE));
+
+    /**
+     * Interface definition for a callback receiving an icon decoded in the background.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param drawable The icon, or {@code null} if it could not be decoded.
+         */
+        void onIconLoaded(@Nullable Drawable drawable);
+    }
+
+    private IconCache() {
+    }
+
+    /**
+     * Returns the icon {@code resId} for the theme of {@code context}, decoding it on the
+     * calling thread on a miss.
+     *
+     * @return The icon, or {@code null} if {@code resId} is 0.
+     */
+    @Nullable
+    public static Drawable getDrawable(Context context, @DrawableRes int resId) {
+        if (resId == 0) {
+            return null;
+        }
+        final Key key = new Key(resId, context.getTheme());
+        Drawable drawable = newDrawable(context, sCache.get(key));
+        if (drawable == null) {
+            drawable = ContextCompat.getDrawable(context, resId);
+            put(key, drawable);
+        }
+        return drawable;
+    }
+
+    /**
+     * Like {@link #getDrawable(Context, int)}, but decodes on a miss in the background. On a
+     * hit, or if {@code resId} is 0, {@code callback} is called right away.
+     */
+    public static void loadDrawable(final Context context, @DrawableRes final int resId,
+                                    final Callback callback) {
+        if (resId == 0) {
+            callback.onIconLoaded(null);
+            return;
+        }
+        final Key key = new Key(resId, context.getTheme());
+        if (deliverCached(context, key, callback)) {
+            return;
+        }
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                Drawable drawable;
+                try {
+                    drawable = ContextCompat.getDrawable(context, resId);
+                } catch (Resources.NotFoundException e) {
+                    // Must not take down the executor thread.
+                    drawable = null;
+                }
+                put(key, drawable);
+                deliver(drawable, callback);
+            }
+        });
+    }
+
+    /**
+     * Decodes the bitmap {@code file} in the background, subsampled to about
+     * {@code reqWidth} by {@code reqHeight} pixels, and caches it until the file changes.
+     * On a hit {@code callback} is called right away.
+     */
+    public static void loadDrawable(final Context context, final File file, final int reqWidth,
+                                    final int reqHeight, final Callback callback) {
+        final Key key = new Key(file.getPath() + '@' + file.lastModified() + '@' + reqWidth
+                + 'x' + reqHeight, null);
+        if (deliverCached(context, key, callback)) {
+            return;
+        }
+        final Resources res = context.getResources();
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = decodeFile(file, reqWidth, reqHeight);
+                Drawable drawable = bitmap != null ? new BitmapDrawable(res, bitmap) : null;
+                put(key, drawable);
+                deliver(drawable, callback);
+            }
+        });
+    }
+
+    /**
+     * Sets the maximum estimated size of the cached icons, in bytes. Drops the cached icons
+     * and resets the counters.
+     */
+    public static void setMaxSize(int maxSizeBytes) {
+        sCache = createCache(maxSizeBytes);
+    }
+
+    public static int getMaxSize() {
+        return sCache.maxSize();
+    }
+
+    /**
+     * @return The estimated size of the cached icons, in bytes.
+     */
+    public static int getSize() {
+        return sCache.size();
+    }
+
+    public static int getHitCount() {
+        return sCache.hitCount();
+    }
+
+    public static int getMissCount() {
+        return sCache.missCount();
+    }
+
+    public static int getEvictionCount() {
+        return sCache.evictionCount();
+    }
+
+    /**
+     * Drops every cached icon.
+     */
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    private static boolean deliverCached(Context context, Key key, Callback callback) {
+        Drawable drawable = newDrawable(context, sCache.get(key));
+        if (drawable == null) {
+            return false;
+        }
+        callback.onIconLoaded(drawable);
+        return true;
+    }
+
+    private static void deliver(final Drawable drawable, final Callback callback) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onIconLoaded(drawable);
+            }
+        });
+    }
+
+    @Nullable
+    private static Drawable newDrawable(Context context, @Nullable Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return entry.state.newDrawable(context.getResources(), context.getTheme());
+        }
+        return entry.state.newDrawable(context.getResources());
+    }
+
+    private static void put(Key key, @Nullable Drawable drawable) {
+        final Drawable.ConstantState state = drawable != null ? drawable.getConstantState() : null;
+        if (state != null) {
+            sCache.put(key, new Entry(state, sizeOf(drawable)));
+        }
+    }
+
+    private static int sizeOf(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        return width > 0 && height > 0 ? width * height * 4 : DEFAULT_ENTRY_SIZE;
+    }
+
+    @Nullable
+    private static Bitmap decodeFile(File file, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int sampleSize = 1;
+        if (reqWidth > 0 && reqHeight > 0) {
+            while (options.outWidth / (sampleSize * 2) >= reqWidth
+                    && options.outHeight / (sampleSize * 2) >= reqHeight) {
+                sampleSize *= 2;
+            }
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    private static LruCache<Key, Entry> createCache(int maxSizeBytes) {
+        return new LruCache<Key, Entry>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Key key, Entry entry) {
+                return entry.size;
+            }
+        };
+    }
+
+    private static final class Entry {
+        final Drawable.ConstantState state;
+        final int size;
+
+        Entry(Drawable.ConstantState state, int size) {
+            this.state = state;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A resource id or file, and the theme it was resolved with. Themes compare by their
+     * applied styles from API 24 on, and by identity before.
+     */
+    private static final class Key {
+        final Object source;
+        final Resources.Theme theme;
+
+        Key(Object source, @Nullable Resources.Theme theme) {
+            this.source = source;
+            this.theme = theme;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return source.equals(other.source)
+                    && (theme == null ? other.theme == null : theme.equals(other.theme));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + (theme != null ? theme.hashCode() : 0);
+        }
+    }
+}
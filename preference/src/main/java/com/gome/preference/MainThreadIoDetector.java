@@ -0,0 +1,190 @@
+package com.gome.preference;
+
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Debug aid recording the persistence reads and writes of this library that run on the main
+ * thread, where a {@link android.content.SharedPreferences} that is not loaded yet, or a
+ * write, can block on the disk.
+ * <p>
+ * Each call made on the main thread that can reach the disk is recorded as a
+ * {@link Violation}, with its duration and the stack trace of its call site: a read or write
+ * of a preference value in the {@link android.content.SharedPreferences}, the load of a
+ * {@link TwoStateTable} and each flush of the {@link PreferenceWriteBuffer}. Values served by
+ * the write buffer, a {@link PersistedValuePreloader} or a {@link PreferenceDataStore} are
+ * not recorded. Turn it on in debug builds with
+ * {@link #MODE_RECORD} and read the violations with {@link #getViolations()}. Unit tests can
+ * use {@link #MODE_ASSERT} instead, which throws on the first violation:
+ * <pre>
+ * &#64;Before
+ * public void setUp() {
+ *     MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+ * }
+ * </pre>
+ * Under Robolectric the test thread is the main thread, so every persistence call of the
+ * code under test is checked.
+ */
+public final class MainThreadIoDetector {
+
+    /**
+     * Nothing is recorded. The default.
+     */
+    public static final int MODE_OFF = 0;
+    /**
+     * Main thread persistence calls are recorded.
+     */
+    public static final int MODE_RECORD = 1;
+    /**
+     * Main thread persistence calls are recorded, and throw an {@link IllegalStateException}
+     * once they completed.
+     */
+    public static final int MODE_ASSERT = 2;
+
+    public static final int READ = 0;
+    public static final int WRITE = 1;
+
+    // The oldest violations are dropped beyond this.
+    private static final int MAX_VIOLATIONS = 100;
+
+    private static volatile int sMode = MODE_OFF;
+    // Whether a watched call is running on the main thread. Main thread only.
+    private static boolean sWatching;
+
+    // Guarded by itself.
+    private static final ArrayList<Violation> sViolations = new ArrayList<>();
+
+    private MainThreadIoDetector() {
+    }
+
+    /**
+     * @param mode One of {@link #MODE_OFF}, {@link #MODE_RECORD} or {@link #MODE_ASSERT}.
+     */
+    public static void setMode(int mode) {
+        sMode = mode;
+    }
+
+    public static int getMode() {
+        return sMode;
+    }
+
+    /**
+     * Starts watching a persistence call. Wrap only the calls that can reach the disk, and
+     * end the window in a {@code finally} block:
+     * <pre>
+     * final long ioStart = MainThreadIoDetector.begin();
+     * try {
+     *     return super.persistBoolean(value);
+     * } finally {
+     *     MainThreadIoDetector.end(MainThreadIoDetector.WRITE, getKey(), ioStart);
+     * }
+     * </pre>
+     * A call made while another one is watched is part of the outer one, and not recorded on
+     * its own.
+     *
+     * @return The start time, or 0 if the call is not watched.
+     */
+    public static long begin() {
+        if (sMode == MODE_OFF || Looper.myLooper() != Looper.getMainLooper() || sWatching) {
+            return 0;
+        }
+        sWatching = true;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the persistence call started with {@link #begin()}, if it was watched.
+     *
+     * @param operation {@link #READ} or {@link #WRITE}.
+     * @param key       The key read or written, or {@code null} for several keys.
+     * @param start     The value {@link #begin()} returned.
+     * @throws IllegalStateException In {@link #MODE_ASSERT}.
+     */
+    public static void end(int operation, @Nullable String key, long start) {
+        if (start == 0) {
+            return;
+        }
+        sWatching = false;
+        final Violation violation = new Violation(operation, key, System.nanoTime() - start,
+                new Throwable("Persistence call site"));
+        synchronized (sViolations) {
+            if (sViolations.size() == MAX_VIOLATIONS) {
+                sViolations.remove(0);
+            }
+            sViolations.add(violation);
+        }
+        if (sMode == MODE_ASSERT) {
+            throw new IllegalStateException(violation.toString(), violation.getCallSite());
+        }
+    }
+
+    /**
+     * @return The recorded violations, oldest first.
+     */
+    public static List<Violation> getViolations() {
+        synchronized (sViolations) {
+            return new ArrayList<>(sViolations);
+        }
+    }
+
+    /**
+     * Drops the recorded violations.
+     */
+    public static void clear() {
+        synchronized (sViolations) {
+            sViolations.clear();
+        }
+    }
+
+    /**
+     * A persistence call made on the main thread. Immutable.
+     */
+    public static final class Violation {
+
+        private final int mOperation;
+        private final String mKey;
+        private final long mDurationNanos;
+        private final Throwable mCallSite;
+
+        Violation(int operation, @Nullable String key, long durationNanos, Throwable callSite) {
+            mOperation = operation;
+            mKey = key;
+            mDurationNanos = durationNanos;
+            mCallSite = callSite;
+        }
+
+        /**
+         * @return {@link #READ} or {@link #WRITE}.
+         */
+        public int getOperation() {
+            return mOperation;
+        }
+
+        @Nullable
+        public String getKey() {
+            return mKey;
+        }
+
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        /**
+         * @return A throwable whose stack trace is the call site.
+         */
+        public Throwable getCallSite() {
+            return mCallSite;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s of %s on the main thread took %.3f ms",
+                    mOperation == READ ? "Read" : "Write", mKey != null ? mKey : "several keys",
+                    mDurationNanos / 1e6);
+        }
+    }
+}
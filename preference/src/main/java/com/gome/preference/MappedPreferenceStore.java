@@ -0,0 +1,494 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link PreferenceDataStore} that keeps its values in a compact, memory-mapped binary file.
+ * <p>
+ * Unlike the XML backed {@link android.content.SharedPreferences}, which parses the whole file
+ * on load and writes it out again on every commit, each key is an entry at a fixed offset of the
+ * mapping. Updating a boolean, int, long or float is a single write into the mapped page; the
+ * kernel writes dirty pages back to disk on its own, which survives a process crash but not a
+ * power loss unless {@link #sync()} is called. Strings are updated in place as long as they fit
+ * into the room reserved for them, and appended otherwise.
+ * <p>
+ * File layout: a header of {@code magic, version, end, deadBytes} followed by entries of
+ * {@code type(1) keyLength(2) key payload}. The payload is 1, 4, 8 or 4 bytes for booleans,
+ * ints, longs and floats, and {@code capacity(4) length(4) bytes(capacity)} for strings.
+ * Replaced and removed entries are flagged as dead and only reclaimed once they make up half
+ * of the file.
+ * <p>
+ * {@link #open(Context, String)} migrates the SharedPreferences file of the same name the
+ * first time a store is opened. String sets are not supported.
+ */
+public class MappedPreferenceStore extends PreferenceDataStore {
+    private static final String TAG = MappedPreferenceStore.class.getSimpleName();
+
+    private static final String FILE_SUFFIX = ".gpref";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x47505246; // "GPRF"
+    private static final int VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_END = 8;
+    private static final int OFFSET_DEAD = 12;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte FLAG_DEAD = (byte) 0x80;
+
+    private static final int ENTRY_HEADER_SIZE = 3;
+    private static final int MAX_KEY_LENGTH = 0xffff;
+    private static final int PAGE_SIZE = 4096;
+    private static final int MIN_COMPACT_BYTES = 16 * 1024;
+
+    private final File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Offset of the live entry of every key.
+     */
+    private final HashMap<String, Integer> mEntries = new HashMap<>();
+    private int mEnd;
+    private int mDeadBytes;
+
+    /**
+     * Opens the store named {@code name} in the app's files directory. If it does not exist
+     * yet, the values of the SharedPreferences file with the same name are migrated into it.
+     *
+     * @param context Used to locate the files and to read the SharedPreferences.
+     * @param name    Name of the SharedPreferences file to take over.
+     */
+    public static MappedPreferenceStore open(Context context, String name) throws IOException {
+        File file = new File(context.getFilesDir(), name + FILE_SUFFIX);
+        if (!file.exists()) {
+            migrate(context.getSharedPreferences(name, Context.MODE_PRIVATE).getAll(), file);
+        }
+        return new MappedPreferenceStore(file);
+    }
+
+    /**
+     * Same as {@link #open(Context, String)} for the default SharedPreferences used by
+     * {@link android.preference.PreferenceManager} and the support PreferenceManager.
+     */
+    public static MappedPreferenceStore openDefault(Context context) throws IOException {
+        return open(context, context.getPackageName() + "_preferences");
+    }
+
+    /**
+     * Opens or creates a store backed by {@code file}, without any migration.
+     */
+    public MappedPreferenceStore(File file) throws IOException {
+        mFile = file;
+        map();
+    }
+
+    private static void migrate(Map<String, ?> values, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        if (temp.exists() && !temp.delete()) {
+            throw new IOException("Unable to delete " + temp);
+        }
+        MappedPreferenceStore store = new MappedPreferenceStore(temp);
+        try {
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Boolean) {
+                    store.putBoolean(entry.getKey(), (Boolean) value);
+                } else if (value instanceof Integer) {
+                    store.putInt(entry.getKey(), (Integer) value);
+                } else if (value instanceof Long) {
+                    store.putLong(entry.getKey(), (Long) value);
+                } else if (value instanceof Float) {
+                    store.putFloat(entry.getKey(), (Float) value);
+                } else if (value instanceof String) {
+                    store.putString(entry.getKey(), (String) value);
+                } else {
+                    Log.w(TAG, "Not migrating " + entry.getKey() + ", unsupported type");
+                }
+            }
+            store.sync();
+        } finally {
+            store.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    private void map() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        long length = mChannel.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(mFile + " is too large");
+        }
+        mEntries.clear();
+        if (length < HEADER_SIZE) {
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, PAGE_SIZE);
+            mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+            mBuffer.putInt(OFFSET_VERSION, VERSION);
+            mEnd = HEADER_SIZE;
+            mDeadBytes = 0;
+            writeHeader();
+        } else {
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC || mBuffer.getInt(OFFSET_VERSION) != VERSION) {
+            throw new IOException(mFile + " is not a preference store");
+        }
+        mEnd = mBuffer.getInt(OFFSET_END);
+        mDeadBytes = mBuffer.getInt(OFFSET_DEAD);
+        if (mEnd < HEADER_SIZE || mEnd > mBuffer.capacity()) {
+            throw new IOException(mFile + " is corrupt");
+        }
+
+        int offset = HEADER_SIZE;
+        while (offset < mEnd) {
+            if (offset + ENTRY_HEADER_SIZE > mEnd) {
+                break;
+            }
+            byte type = mBuffer.get(offset);
+            int baseType = type & ~FLAG_DEAD;
+            if (baseType < TYPE_BOOLEAN || baseType > TYPE_STRING) {
+                break;
+            }
+            int keyLength = mBuffer.getShort(offset + 1) & 0xffff;
+            int valueOffset = offset + ENTRY_HEADER_SIZE + keyLength;
+            if (valueOffset > mEnd || (baseType == TYPE_STRING && valueOffset + 8 > mEnd)) {
+                break;
+            }
+            int size = ENTRY_HEADER_SIZE + keyLength + payloadSize(type, valueOffset);
+            if (offset + size > mEnd) {
+                break;
+            }
+            if ((type & FLAG_DEAD) == 0) {
+                mEntries.put(readString(offset + ENTRY_HEADER_SIZE, keyLength), offset);
+            }
+            offset += size;
+        }
+        if (offset != mEnd) {
+            // A write was interrupted, drop the partial entry.
+            Log.w(TAG, "Truncating " + mFile + " at " + offset);
+            mEnd = offset;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Writes dirty pages back to the disk. Not needed for values to survive a process death.
+     */
+    public synchronized void sync() {
+        mBuffer.force();
+    }
+
+    /**
+     * Syncs and releases the file. The store must not be used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        mBuffer.force();
+        mChannel.close();
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * @return Whether the store has a value for {@code key}.
+     */
+    @Override
+    public synchronized boolean contains(String key) {
+        return mEntries.containsKey(key);
+    }
+
+    /**
+     * Removes the value for {@code key}, if any.
+     */
+    public synchronized void remove(String key) {
+        Integer offset = mEntries.remove(key);
+        if (offset != null) {
+            kill(offset);
+            maybeCompact();
+        }
+    }
+
+    @Override
+    public synchronized void putBoolean(String key, boolean value) {
+        // Resolve first, appending may remap mBuffer.
+        int valueOffset = fixedValueOffset(key, TYPE_BOOLEAN);
+        mBuffer.put(valueOffset, value ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public synchronized void putInt(String key, int value) {
+        int valueOffset = fixedValueOffset(key, TYPE_INT);
+        mBuffer.putInt(valueOffset, value);
+    }
+
+    @Override
+    public synchronized void putLong(String key, long value) {
+        int valueOffset = fixedValueOffset(key, TYPE_LONG);
+        mBuffer.putLong(valueOffset, value);
+    }
+
+    @Override
+    public synchronized void putFloat(String key, float value) {
+        int valueOffset = fixedValueOffset(key, TYPE_FLOAT);
+        mBuffer.putFloat(valueOffset, value);
+    }
+
+    @Override
+    public synchronized void putString(String key, @Nullable String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        Integer offset = mEntries.get(key);
+        if (offset != null) {
+            if (mBuffer.get(offset) == TYPE_STRING) {
+                int valueOffset = valueOffset(offset);
+                if (bytes.length <= mBuffer.getInt(valueOffset)) {
+                    writeBytes(valueOffset + 8, bytes);
+                    mBuffer.putInt(valueOffset + 4, bytes.length);
+                    return;
+                }
+            }
+            kill(offset);
+        }
+        // Leave some room so a slightly longer value next time can still go in place.
+        int capacity = bytes.length + (bytes.length >> 1);
+        int valueOffset = append(key, TYPE_STRING, 8 + capacity);
+        mBuffer.putInt(valueOffset, capacity);
+        mBuffer.putInt(valueOffset + 4, bytes.length);
+        writeBytes(valueOffset + 8, bytes);
+        commitAppend(key, valueOffset);
+        maybeCompact();
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Integer offset = mEntries.get(key);
+        return offset != null ? mBuffer.get(checkedValueOffset(key, offset, TYPE_BOOLEAN)) != 0
+                : defValue;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Integer offset = mEntries.get(key);
+        return offset != null ? mBuffer.getInt(checkedValueOffset(key, offset, TYPE_INT))
+                : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Integer offset = mEntries.get(key);
+        return offset != null ? mBuffer.getLong(checkedValueOffset(key, offset, TYPE_LONG))
+                : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        Integer offset = mEntries.get(key);
+        return offset != null ? mBuffer.getFloat(checkedValueOffset(key, offset, TYPE_FLOAT))
+                : defValue;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getString(String key, @Nullable String defValue) {
+        Integer offset = mEntries.get(key);
+        if (offset == null) {
+            return defValue;
+        }
+        int valueOffset = checkedValueOffset(key, offset, TYPE_STRING);
+        return readString(valueOffset + 8, mBuffer.getInt(valueOffset + 4));
+    }
+
+    /**
+     * Returns the offset of the fixed size value of {@code key}, appending an entry of
+     * {@code type} if there is none yet or it has a different type.
+     */
+    private int fixedValueOffset(String key, byte type) {
+        Integer offset = mEntries.get(key);
+        if (offset != null) {
+            if (mBuffer.get(offset) == type) {
+                return valueOffset(offset);
+            }
+            kill(offset);
+        }
+        int valueOffset = append(key, type, payloadSize(type, 0));
+        // The caller writes the value right after this; the header is updated first so a
+        // crash in between leaves a zero value rather than a lost key.
+        commitAppend(key, valueOffset);
+        return valueOffset;
+    }
+
+    private int checkedValueOffset(String key, int offset, byte type) {
+        if (mBuffer.get(offset) != type) {
+            throw new ClassCastException(key + " is not of type " + type);
+        }
+        return valueOffset(offset);
+    }
+
+    private int valueOffset(int offset) {
+        return offset + ENTRY_HEADER_SIZE + (mBuffer.getShort(offset + 1) & 0xffff);
+    }
+
+    private int payloadSize(byte type, int valueOffset) {
+        switch (type & ~FLAG_DEAD) {
+            case TYPE_BOOLEAN:
+                return 1;
+            case TYPE_INT:
+            case TYPE_FLOAT:
+                return 4;
+            case TYPE_LONG:
+                return 8;
+            case TYPE_STRING:
+                return 8 + mBuffer.getInt(valueOffset);
+            default:
+                throw new IllegalStateException("Unknown entry type " + type + " in " + mFile);
+        }
+    }
+
+    /**
+     * Writes the entry header of a new entry at the end of the file and returns the offset
+     * of its payload. The entry only becomes visible with {@link #commitAppend}.
+     */
+    private int append(String key, byte type, int payloadSize) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Key too long: " + key);
+        }
+        int size = ENTRY_HEADER_SIZE + keyBytes.length + payloadSize;
+        ensureCapacity(mEnd + size);
+        mBuffer.put(mEnd, type);
+        mBuffer.putShort(mEnd + 1, (short) keyBytes.length);
+        writeBytes(mEnd + ENTRY_HEADER_SIZE, keyBytes);
+        for (int i = mEnd + ENTRY_HEADER_SIZE + keyBytes.length, end = mEnd + size; i < end; i++) {
+            mBuffer.put(i, (byte) 0);
+        }
+        return mEnd + ENTRY_HEADER_SIZE + keyBytes.length;
+    }
+
+    private void commitAppend(String key, int valueOffset) {
+        int offset = mEnd;
+        mEnd = valueOffset + payloadSize(mBuffer.get(offset), valueOffset);
+        writeHeader();
+        mEntries.put(key, offset);
+    }
+
+    private void kill(int offset) {
+        byte type = mBuffer.get(offset);
+        mBuffer.put(offset, (byte) (type | FLAG_DEAD));
+        int valueOffset = valueOffset(offset);
+        mDeadBytes += valueOffset - offset + payloadSize(type, valueOffset);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        mBuffer.putInt(OFFSET_END, mEnd);
+        mBuffer.putInt(OFFSET_DEAD, mDeadBytes);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= mBuffer.capacity()) {
+            return;
+        }
+        int pages = (required + PAGE_SIZE - 1) / PAGE_SIZE;
+        int size = Math.max(mBuffer.capacity() * 2, pages * PAGE_SIZE);
+        try {
+            // Mapping past the end of the file grows it.
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to grow " + mFile, e);
+        }
+    }
+
+    /**
+     * Rewrites the file without the dead entries once they take up half of it. Only replaced
+     * or removed strings and entries that changed type produce dead entries, so for boolean
+     * preferences this never runs.
+     */
+    private void maybeCompact() {
+        if (mDeadBytes < MIN_COMPACT_BYTES || mDeadBytes * 2 < mEnd) {
+            return;
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        try {
+            RandomAccessFile out = new RandomAccessFile(temp, "rw");
+            try {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+                out.writeInt(0);
+                byte[] chunk = new byte[256];
+                int offset = HEADER_SIZE;
+                while (offset < mEnd) {
+                    byte type = mBuffer.get(offset);
+                    int valueOffset = valueOffset(offset);
+                    int size = valueOffset - offset + payloadSize(type, valueOffset);
+                    if ((type & FLAG_DEAD) == 0) {
+                        if (chunk.length < size) {
+                            chunk = new byte[size];
+                        }
+                        for (int i = 0; i < size; i++) {
+                            chunk[i] = mBuffer.get(offset + i);
+                        }
+                        out.write(chunk, 0, size);
+                    }
+                    offset += size;
+                }
+                int end = (int) out.getFilePointer();
+                out.seek(OFFSET_END);
+                out.writeInt(end);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            mChannel.close();
+            mRandomAccessFile.close();
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + temp + " to " + mFile);
+            }
+            map();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to compact " + mFile, e);
+        }
+    }
+
+    private void writeBytes(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            mBuffer.put(offset + i, bytes[i]);
+        }
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
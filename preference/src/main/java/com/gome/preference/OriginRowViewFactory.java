@@ -0,0 +1,119 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.v4.content.ContextCompat;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
+
+/**
+ * Hand-built equivalent of {@code R.layout.origin_preference}, optionally with
+ * {@code R.layout.preference_widget_switch} in its widget frame.
+ * <p>
+ * Keep this in sync with the two layouts; the views, ids and attributes are the same, only
+ * created without parsing XML or instantiating views reflectively.
+ */
+public class OriginRowViewFactory implements RowViewFactory {
+
+    /**
+     * A row with an empty, gone widget frame, as for {@link CustomPreference}.
+     */
+    public static final OriginRowViewFactory PLAIN = new OriginRowViewFactory(false);
+
+    /**
+     * A row with a switch widget, as for {@link SwitchPreference}.
+     */
+    public static final OriginRowViewFactory SWITCH = new OriginRowViewFactory(true);
+
+    private final boolean mWithSwitch;
+
+    protected OriginRowViewFactory(boolean withSwitch) {
+        mWithSwitch = withSwitch;
+    }
+
+    @Override
+    public View createRow(Context context, ViewGroup parent) {
+        final Resources res = context.getResources();
+
+        PreferenceRowLayout row = new PreferenceRowLayout(context);
+        row.setLayoutParams(new ViewGroup.LayoutParams(MATCH_PARENT, WRAP_CONTENT));
+        row.setBackground(ContextCompat.getDrawable(context, R.layout.layout_background_selector));
+        row.setFocusable(true);
+        row.setMinimumHeight(resolveDimension(context, android.R.attr.listPreferredItemHeight));
+        row.setPaddingRelative(0, 0, resolveDimension(context, android.R.attr.scrollbarSize), 0);
+
+        ImageView icon = new ImageView(context);
+        icon.setId(android.R.id.icon);
+        row.addView(icon, new ViewGroup.MarginLayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+
+        TextView title = new TextView(context);
+        title.setId(android.R.id.title);
+        title.setEllipsize(TextUtils.TruncateAt.MARQUEE);
+        title.setHorizontalFadingEdgeEnabled(true);
+        title.setSingleLine(true);
+        title.setTextColor(0xFF444444);
+        title.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
+        ViewGroup.MarginLayoutParams titleParams =
+                new ViewGroup.MarginLayoutParams(WRAP_CONTENT, WRAP_CONTENT);
+        titleParams.topMargin = dp(res, 6);
+        titleParams.setMarginStart(dp(res, 15));
+        titleParams.setMarginEnd(dp(res, 6));
+        row.addView(title, titleParams);
+
+        TextView summary = new TextView(context);
+        summary.setId(android.R.id.summary);
+        summary.setMaxLines(4);
+        summary.setTextColor(0xFFAAAAAA);
+        summary.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+        ViewGroup.MarginLayoutParams summaryParams =
+                new ViewGroup.MarginLayoutParams(WRAP_CONTENT, WRAP_CONTENT);
+        summaryParams.bottomMargin = dp(res, 6);
+        summaryParams.setMarginStart(dp(res, 15));
+        summaryParams.setMarginEnd(dp(res, 6));
+        row.addView(summary, summaryParams);
+
+        FrameLayout widgetFrame = new FrameLayout(context);
+        widgetFrame.setId(android.R.id.widget_frame);
+        row.addView(widgetFrame, new ViewGroup.MarginLayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+        if (mWithSwitch) {
+            widgetFrame.addView(createSwitch(context),
+                    new FrameLayout.LayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+        }
+        widgetFrame.setVisibility(mWithSwitch ? View.VISIBLE : View.GONE);
+
+        return row;
+    }
+
+    /**
+     * Equivalent of {@code R.layout.preference_widget_switch}.
+     */
+    protected View createSwitch(Context context) {
+        GomeSwitch switchView = new GomeSwitch(context);
+        switchView.setId(R.id.custom_switch_widget);
+        switchView.setBackground(null);
+        switchView.setClickable(false);
+        switchView.setFocusable(false);
+        return switchView;
+    }
+
+    private static int dp(Resources res, int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                res.getDisplayMetrics());
+    }
+
+    private static int resolveDimension(Context context, int attr) {
+        TypedValue value = new TypedValue();
+        if (!context.getTheme().resolveAttribute(attr, value, true)) {
+            return 0;
+        }
+        return (int) value.getDimension(context.getResources().getDisplayMetrics());
+    }
+}
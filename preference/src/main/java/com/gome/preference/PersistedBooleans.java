@@ -0,0 +1,80 @@
+package com.gome.preference;
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+/**
+ * The boolean persistence of the framework and the {@code support} {@link TwoStatePreference},
+ * for everything that does not go through their superclass.
+ * <p>
+ * Values go to the {@link PreferenceDataStore} if there is one, and otherwise to the
+ * {@link PreferenceWriteBuffer} while it is buffering. They are read back from there, or from
+ * a {@link PersistedValuePreloader}. Only what is left has to go through
+ * {@code super.persistBoolean} or {@code super.getPersistedBoolean}, the one path that can
+ * reach the disk on the calling thread.
+ */
+public final class PersistedBooleans {
+
+    private PersistedBooleans() {
+    }
+
+    /**
+     * Persists {@code value} to {@code dataStore} or the {@link PreferenceWriteBuffer}.
+     *
+     * @return Whether it was persisted, if not it has to be written to {@code preferences}.
+     */
+    public static boolean persist(@Nullable PreferenceDataStore dataStore,
+                                  SharedPreferences preferences, String key, boolean value) {
+        if (dataStore != null) {
+            if (value != dataStore.getBoolean(key, !value)) {
+                dataStore.putBoolean(key, value);
+            }
+            return true;
+        }
+        if (PreferenceWriteBuffer.isBuffering()) {
+            // Not compared with the SharedPreferences, which may still be loading. The flush
+            // does not notify the listeners of values that did not change.
+            PreferenceWriteBuffer.putBoolean(preferences, key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether {@code key} has a value in {@code dataStore}, the
+     * {@link PreferenceWriteBuffer} or a {@link PersistedValuePreloader}.
+     *
+     * @return Whether it has, or {@code null} if it has to be asked of {@code preferences}.
+     */
+    @Nullable
+    public static Boolean contains(@Nullable PreferenceDataStore dataStore,
+                                   SharedPreferences preferences, String key) {
+        if (dataStore != null) {
+            return dataStore.contains(key);
+        }
+        if (PreferenceWriteBuffer.hasPendingBoolean(preferences, key)) {
+            return true;
+        }
+        return PersistedValuePreloader.containsPreloadedValue(preferences, key);
+    }
+
+    /**
+     * Reads the value of {@code key} from {@code dataStore}, the {@link PreferenceWriteBuffer}
+     * or a {@link PersistedValuePreloader}.
+     *
+     * @return The value, or {@code null} if it has to be read from {@code preferences}.
+     */
+    @Nullable
+    public static Boolean getPersisted(@Nullable PreferenceDataStore dataStore,
+                                       SharedPreferences preferences, String key,
+                                       boolean defaultReturnValue) {
+        if (dataStore != null) {
+            return dataStore.getBoolean(key, defaultReturnValue);
+        }
+        if (PreferenceWriteBuffer.hasPendingBoolean(preferences, key)) {
+            return PreferenceWriteBuffer.getPendingBoolean(preferences, key, defaultReturnValue);
+        }
+        final Object preloaded = PersistedValuePreloader.getPreloadedValue(preferences, key);
+        return preloaded instanceof Boolean ? (Boolean) preloaded : null;
+    }
+}
@@ -0,0 +1,309 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.annotation.XmlRes;
+import android.util.Log;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the persisted values of the preferences declared in XML on the
+ * {@link BackgroundExecutor}, so that attaching the hierarchy does not block the main thread
+ * on loading the {@link SharedPreferences} from disk.
+ * <p>
+ * Start the preload as early as possible, for example from {@code Application.onCreate},
+ * and add the preferences as usual. Both {@link TwoStatePreference} hierarchies decide whether
+ * they have a persisted state, and read it, from the in-memory snapshot if it is ready by
+ * then, and from the {@link SharedPreferences} otherwise. Start one preload per screen:
+ * <pre>
+ * sPreloader = PersistedValuePreloader.start(this,
+ *         PreferenceManager.getDefaultSharedPreferences(this), R.xml.preferences);
+ * </pre>
+ * Do not hold the hierarchy back until the snapshot is ready: the fragment restores the
+ * state of its hierarchy when its activity is created, and inflating the XML can run
+ * alongside the load.
+ * <p>
+ * Call {@link #release()} once the hierarchy is attached, or when the screen goes away before
+ * that. A key changed after the snapshot was taken is read from the
+ * {@link SharedPreferences} again, so the snapshot never hides a newer value.
+ */
+public final class PersistedValuePreloader {
+
+    private static final String TAG = "PersistedValuePreloader";
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private static final CopyOnWriteArrayList<PersistedValuePreloader> sActive =
+            new CopyOnWriteArrayList<>();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private final SharedPreferences mSharedPreferences;
+    private final CountDownLatch mReady = new CountDownLatch(1);
+    // Written once on the background thread, mKeys before mValues.
+    private volatile Set<String> mKeys;
+    private volatile Map<String, Object> mValues;
+    // Keys changed since the preload started, guarded by itself.
+    private final Set<String> mChangedKeys = new HashSet<>();
+    // Main thread only.
+    private final ArrayList<OnReadyListener> mListeners = new ArrayList<>();
+    private boolean mNotified;
+    private boolean mReleased;
+
+    // The SharedPreferences only keep a weak reference to it.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    synchronized (mChangedKeys) {
+                        mChangedKeys.add(key);
+                    }
+                }
+            };
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notifyReady();
+        }
+    };
+
+    /**
+     * Interface definition for a callback to be invoked when the snapshot is ready.
+     */
+    public interface OnReadyListener {
+        /**
+         * Called on the main thread.
+         */
+        void onReady(PersistedValuePreloader preloader);
+    }
+
+    private PersistedValuePreloader(SharedPreferences sharedPreferences) {
+        mSharedPreferences = sharedPreferences;
+    }
+
+    /**
+     * Starts loading the values of the keys declared in {@code xmlResIds} on the
+     * {@link BackgroundExecutor}. Call this on the main thread.
+     *
+     * @param sharedPreferences The preferences the hierarchy persists to, for example
+     *                          {@code getPreferenceManager().getSharedPreferences()}.
+     * @param xmlResIds         The preference XML the hierarchy is built from.
+     */
+    public static PersistedValuePreloader start(Context context,
+                                                final SharedPreferences sharedPreferences,
+                                                @XmlRes final int... xmlResIds) {
+        final PersistedValuePreloader preloader = new PersistedValuePreloader(sharedPreferences);
+        // Registering does not wait for the preferences to load.
+        sharedPreferences.registerOnSharedPreferenceChangeListener(preloader.mChangeListener);
+        sActive.add(preloader);
+        final Resources resources = context.getResources();
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                preloader.load(resources, xmlResIds);
+            }
+        });
+        return preloader;
+    }
+
+    private void load(Resources resources, int[] xmlResIds) {
+        final HashMap<String, Object> values = new HashMap<>();
+        final Set<String> keys = new HashSet<>();
+        try {
+            for (int xmlResId : xmlResIds) {
+                readKeys(resources, xmlResId, keys);
+            }
+            // Blocks this thread, instead of the main thread, until the file is loaded.
+            final Map<String, ?> persisted = mSharedPreferences.getAll();
+            for (String key : keys) {
+                final Object value = persisted.get(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            // The hierarchy reads the preferences itself.
+            Log.w(TAG, "Cannot preload", e);
+            keys.clear();
+            values.clear();
+        }
+        mKeys = Collections.unmodifiableSet(keys);
+        mValues = Collections.unmodifiableMap(values);
+        mReady.countDown();
+        sHandler.post(mNotifyRunnable);
+    }
+
+    private static void readKeys(Resources resources, int xmlResId, Set<String> keys)
+            throws XmlPullParserException, IOException {
+        final XmlResourceParser parser = resources.getXml(xmlResId);
+        try {
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final int resId = parser.getAttributeResourceValue(ANDROID_NS, "key", 0);
+                final String key = resId != 0 ? resources.getString(resId)
+                        : parser.getAttributeValue(ANDROID_NS, "key");
+                if (key != null) {
+                    keys.add(key);
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void notifyReady() {
+        mNotified = true;
+        if (mReleased) {
+            return;
+        }
+        final ArrayList<OnReadyListener> listeners = new ArrayList<>(mListeners);
+        mListeners.clear();
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onReady(this);
+        }
+    }
+
+    /**
+     * @return Whether the snapshot is loaded.
+     */
+    public boolean isReady() {
+        return mValues != null;
+    }
+
+    /**
+     * Waits for the snapshot, blocking the calling thread.
+     *
+     * @return Whether the snapshot is loaded, {@code false} if the timeout elapsed first.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mReady.await(timeout, unit);
+    }
+
+    /**
+     * Adds a listener called once on the main thread when the snapshot is ready, right away if
+     * it already is. Call this on the main thread.
+     */
+    public void addOnReadyListener(OnReadyListener listener) {
+        if (mReleased) {
+            return;
+        }
+        if (mNotified) {
+            listener.onReady(this);
+        } else {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeOnReadyListener(OnReadyListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Drops the snapshot and the pending listeners. Call this on the main thread.
+     */
+    public void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mListeners.clear();
+        sActive.remove(this);
+        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(mChangeListener);
+    }
+
+    @Nullable
+    private Object get(String key) {
+        final Map<String, Object> values = mValues;
+        if (values == null) {
+            return null;
+        }
+        synchronized (mChangedKeys) {
+            if (mChangedKeys.contains(key)) {
+                return null;
+            }
+        }
+        return values.get(key);
+    }
+
+    @Nullable
+    private Boolean contains(String key) {
+        final Map<String, Object> values = mValues;
+        if (values == null || !mKeys.contains(key)) {
+            return null;
+        }
+        synchronized (mChangedKeys) {
+            if (mChangedKeys.contains(key)) {
+                return null;
+            }
+        }
+        return values.containsKey(key);
+    }
+
+    /**
+     * Returns the preloaded value of {@code key}.
+     *
+     * @return The value, or {@code null} if no ready preload of {@code sharedPreferences} has
+     * it, in which case read the {@link SharedPreferences} instead.
+     */
+    @Nullable
+    public static Object getPreloadedValue(SharedPreferences sharedPreferences, String key) {
+        if (sharedPreferences == null || key == null) {
+            return null;
+        }
+        for (PersistedValuePreloader preloader : sActive) {
+            if (preloader.mSharedPreferences == sharedPreferences) {
+                final Object value = preloader.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether {@code key} has a persisted value, without waiting for the
+     * {@link SharedPreferences} to load.
+     *
+     * @return Whether it has, or {@code null} if no ready preload of {@code sharedPreferences}
+     * read the key, in which case ask the {@link SharedPreferences} instead.
+     */
+    @Nullable
+    public static Boolean containsPreloadedValue(SharedPreferences sharedPreferences,
+                                                 String key) {
+        if (sharedPreferences == null || key == null) {
+            return null;
+        }
+        for (PersistedValuePreloader preloader : sActive) {
+            if (preloader.mSharedPreferences == sharedPreferences) {
+                final Boolean contains = preloader.contains(key);
+                if (contains != null) {
+                    return contains;
+                }
+            }
+        }
+        return null;
+    }
+}
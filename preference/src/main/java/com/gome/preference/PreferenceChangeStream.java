@@ -0,0 +1,168 @@
+package com.gome.preference;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Library wide stream of preference value changes, from both the framework and the
+ * {@code support} hierarchy, as an alternative to one
+ * {@code OnPreferenceChangeListener} per preference.
+ * <p>
+ * The changes made within a frame are coalesced, each key keeping its last value, and each
+ * subscriber gets them as one batch on its own executor, filtered by key prefix:
+ * <pre>
+ * mSubscription = PreferenceChangeStream.subscribe("pref_key_sync_", executor,
+ *         new PreferenceChangeStream.Listener() {
+ *             public void onPreferencesChanged(Map&lt;String, Object&gt; changes) {
+ *                 ...
+ *             }
+ *         });
+ * </pre>
+ * A {@link TwoStatePreference} posts its new state whenever it changes. Other preferences can
+ * take part through {@link #post(String, Object)}. Unlike a change listener the stream cannot
+ * veto a change, it only reports changes that happened.
+ */
+public final class PreferenceChangeStream {
+
+    private static final Object sLock = new Object();
+    // Guarded by sLock.
+    private static final LinkedHashMap<String, Object> sPending = new LinkedHashMap<>();
+    private static boolean sDispatchScheduled;
+
+    private static final CopyOnWriteArrayList<Subscription> sSubscriptions =
+            new CopyOnWriteArrayList<>();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static final Runnable sDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    private static final Choreographer.FrameCallback sFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    dispatch();
+                }
+            };
+
+    /**
+     * Interface definition for a callback receiving the coalesced changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the executor of the subscription.
+         *
+         * @param changes The last value of each changed key matching the prefix, in the order
+         *                the keys first changed. Never empty.
+         */
+        void onPreferencesChanged(Map<String, Object> changes);
+    }
+
+    private PreferenceChangeStream() {
+    }
+
+    /**
+     * Subscribes {@code listener} to the changes of the keys starting with {@code keyPrefix}.
+     *
+     * @param keyPrefix The key prefix, empty for all keys.
+     * @param executor  The executor the changes are delivered on.
+     * @return The subscription, to {@link Subscription#unsubscribe() unsubscribe} with.
+     */
+    public static Subscription subscribe(String keyPrefix, Executor executor,
+                                         Listener listener) {
+        final Subscription subscription = new Subscription(keyPrefix, executor, listener);
+        sSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Reports that the value of {@code key} changed to {@code value}. Delivered to the
+     * subscribers with the other changes of the current frame.
+     */
+    public static void post(String key, Object value) {
+        if (key == null || sSubscriptions.isEmpty()) {
+            return;
+        }
+        synchronized (sLock) {
+            sPending.put(key, value);
+            if (sDispatchScheduled) {
+                return;
+            }
+            sDispatchScheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(sFrameCallback);
+        } else {
+            // The Choreographer is thread local.
+            sHandler.post(sDispatchRunnable);
+        }
+    }
+
+    private static void dispatch() {
+        final ArrayList<Map.Entry<String, Object>> changes;
+        synchronized (sLock) {
+            changes = new ArrayList<>(sPending.entrySet());
+            sPending.clear();
+            sDispatchScheduled = false;
+        }
+        for (Subscription subscription : sSubscriptions) {
+            final LinkedHashMap<String, Object> matching = new LinkedHashMap<>();
+            for (int i = 0; i < changes.size(); i++) {
+                final Map.Entry<String, Object> change = changes.get(i);
+                if (change.getKey().startsWith(subscription.mKeyPrefix)) {
+                    matching.put(change.getKey(), change.getValue());
+                }
+            }
+            if (!matching.isEmpty()) {
+                subscription.deliver(Collections.unmodifiableMap(matching));
+            }
+        }
+    }
+
+    /**
+     * A subscription to the stream.
+     */
+    public static final class Subscription {
+
+        private final String mKeyPrefix;
+        private final Executor mExecutor;
+        private final Listener mListener;
+        private volatile boolean mUnsubscribed;
+
+        Subscription(String keyPrefix, Executor executor, Listener listener) {
+            mKeyPrefix = keyPrefix;
+            mExecutor = executor;
+            mListener = listener;
+        }
+
+        /**
+         * Stops the deliveries, including those already handed to the executor.
+         */
+        public void unsubscribe() {
+            mUnsubscribed = true;
+            sSubscriptions.remove(this);
+        }
+
+        void deliver(final Map<String, Object> changes) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mUnsubscribed) {
+                        mListener.onPreferencesChanged(changes);
+                    }
+                }
+            });
+        }
+    }
+}
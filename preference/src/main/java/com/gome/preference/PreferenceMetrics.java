@@ -0,0 +1,316 @@
+package com.gome.preference;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Opt-in counters and latency histograms for the hot paths of this library, in both the
+ * framework and the {@code support} hierarchy.
+ * <p>
+ * Nothing is recorded until {@link #setEnabled(boolean)} turns the metrics on; until then an
+ * instrumented call costs a read of a volatile flag. The app reads the numbers with
+ * {@link #snapshot()}, or registers a {@link Listener} and calls {@link #publish()}, for
+ * example from {@code onPause}, to ship them with its own telemetry:
+ * <pre>
+ * PreferenceMetrics.setEnabled(true);
+ * PreferenceMetrics.addListener(new PreferenceMetrics.Listener() {
+ *     public void onMetrics(PreferenceMetrics.Snapshot snapshot) {
+ *         Log.i(TAG, snapshot.dump());
+ *     }
+ * });
+ * </pre>
+ * Latencies are kept in power of two buckets of nanoseconds, so the percentiles are accurate
+ * to a factor of two.
+ */
+public final class PreferenceMetrics {
+
+    /**
+     * Creating a row, {@code onCreateView} or {@code onCreateViewHolder}.
+     */
+    public static final int ON_CREATE_VIEW = 0;
+    /**
+     * Binding a row, {@code onBindView} or {@code onBindViewHolder}.
+     */
+    public static final int ON_BIND_VIEW = 1;
+    public static final int SET_CHECKED = 2;
+    public static final int PERSIST_BOOLEAN = 3;
+    public static final int SYNC_SUMMARY_VIEW = 4;
+    /**
+     * Telling the dependents of a preference about a change, in a {@link DependencyIndex} batch.
+     */
+    public static final int PROPAGATE_DEPENDENCY = 5;
+
+    private static final String[] TIMER_NAMES = {
+            "onCreateView", "onBindView", "setChecked", "persistBoolean", "syncSummaryView",
+            "propagateDependency"};
+
+    /**
+     * A row was taken from a {@link RowViewPool}.
+     */
+    public static final int ROW_POOL_HIT = 0;
+    /**
+     * A row had to be built because its {@link RowViewPool} had none ready.
+     */
+    public static final int ROW_POOL_MISS = 1;
+    /**
+     * A {@code support} row was rebound partially from change payloads.
+     */
+    public static final int PARTIAL_BIND = 2;
+
+    private static final String[] COUNTER_NAMES = {"rowPoolHit", "rowPoolMiss", "partialBind"};
+
+    // Bucket i holds latencies from 2^i up to 2^(i + 1) nanoseconds.
+    private static final int BUCKET_COUNT = 40;
+
+    private static volatile boolean sEnabled;
+
+    private static final Object sLock = new Object();
+    // Guarded by sLock.
+    private static final long[][] sBuckets = new long[TIMER_NAMES.length][BUCKET_COUNT];
+    private static final long[] sTotalNanos = new long[TIMER_NAMES.length];
+    private static final long[] sMaxNanos = new long[TIMER_NAMES.length];
+    private static final long[] sCounters = new long[COUNTER_NAMES.length];
+
+    private static final CopyOnWriteArrayList<Listener> sListeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Interface definition for a callback receiving the metrics on {@link #publish()}.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread calling {@link #publish()}.
+         */
+        void onMetrics(Snapshot snapshot);
+    }
+
+    private PreferenceMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Starts timing a call:
+     * <pre>
+     * final long start = PreferenceMetrics.start();
+     * ...
+     * PreferenceMetrics.stop(PreferenceMetrics.ON_BIND_VIEW, start);
+     * </pre>
+     *
+     * @return The start time, or 0 if the metrics are disabled.
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a call timed from {@code start}.
+     *
+     * @param timer One of the timer constants, such as {@link #ON_BIND_VIEW}.
+     * @param start The value {@link #start()} returned.
+     */
+    public static void stop(int timer, long start) {
+        if (start == 0) {
+            return;
+        }
+        final long nanos = System.nanoTime() - start;
+        final int bucket = Math.min(BUCKET_COUNT - 1,
+                Math.max(0, 63 - Long.numberOfLeadingZeros(nanos)));
+        synchronized (sLock) {
+            sBuckets[timer][bucket]++;
+            sTotalNanos[timer] += nanos;
+            sMaxNanos[timer] = Math.max(sMaxNanos[timer], nanos);
+        }
+    }
+
+    /**
+     * @param counter One of the counter constants, such as {@link #ROW_POOL_HIT}.
+     */
+    public static void increment(int counter) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (sLock) {
+            sCounters[counter]++;
+        }
+    }
+
+    /**
+     * @return The metrics recorded since they were last reset.
+     */
+    public static Snapshot snapshot() {
+        synchronized (sLock) {
+            final long[][] buckets = new long[TIMER_NAMES.length][];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = sBuckets[i].clone();
+            }
+            return new Snapshot(buckets, sTotalNanos.clone(), sMaxNanos.clone(),
+                    sCounters.clone());
+        }
+    }
+
+    /**
+     * Drops the recorded metrics.
+     */
+    public static void reset() {
+        synchronized (sLock) {
+            for (long[] buckets : sBuckets) {
+                Arrays.fill(buckets, 0);
+            }
+            Arrays.fill(sTotalNanos, 0);
+            Arrays.fill(sMaxNanos, 0);
+            Arrays.fill(sCounters, 0);
+        }
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Hands the metrics recorded since the last publish to the listeners, and resets them.
+     *
+     * @return The published metrics.
+     */
+    public static Snapshot publish() {
+        final Snapshot snapshot;
+        synchronized (sLock) {
+            snapshot = snapshot();
+            reset();
+        }
+        for (Listener listener : sListeners) {
+            listener.onMetrics(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The metrics at one point in time. Immutable.
+     */
+    public static final class Snapshot {
+
+        private final long[][] mBuckets;
+        private final long[] mTotalNanos;
+        private final long[] mMaxNanos;
+        private final long[] mCounters;
+
+        Snapshot(long[][] buckets, long[] totalNanos, long[] maxNanos, long[] counters) {
+            mBuckets = buckets;
+            mTotalNanos = totalNanos;
+            mMaxNanos = maxNanos;
+            mCounters = counters;
+        }
+
+        public int getTimerCount() {
+            return TIMER_NAMES.length;
+        }
+
+        public String getTimerName(int timer) {
+            return TIMER_NAMES[timer];
+        }
+
+        /**
+         * @return The number of timed calls.
+         */
+        public long getCount(int timer) {
+            long count = 0;
+            for (long bucket : mBuckets[timer]) {
+                count += bucket;
+            }
+            return count;
+        }
+
+        public long getTotalNanos(int timer) {
+            return mTotalNanos[timer];
+        }
+
+        public long getMaxNanos(int timer) {
+            return mMaxNanos[timer];
+        }
+
+        /**
+         * @param percentile The percentile, from 0 to 100.
+         * @return The upper bound of the bucket holding {@code percentile}, or 0 if nothing
+         * was timed.
+         */
+        public long getPercentileNanos(int timer, double percentile) {
+            final long count = getCount(timer);
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[timer][i];
+                if (seen >= rank) {
+                    return Math.min(mMaxNanos[timer], (1L << (i + 1)) - 1);
+                }
+            }
+            return mMaxNanos[timer];
+        }
+
+        /**
+         * @return The number of calls in bucket {@code bucket}, which holds latencies from
+         * 2^{@code bucket} up to 2^({@code bucket} + 1) nanoseconds.
+         */
+        public long getBucket(int timer, int bucket) {
+            return mBuckets[timer][bucket];
+        }
+
+        public int getBucketCount() {
+            return BUCKET_COUNT;
+        }
+
+        public int getCounterCount() {
+            return COUNTER_NAMES.length;
+        }
+
+        public String getCounterName(int counter) {
+            return COUNTER_NAMES[counter];
+        }
+
+        public long getCounter(int counter) {
+            return mCounters[counter];
+        }
+
+        /**
+         * @return A line per timer and counter, for logs and bug reports. Times are in
+         * microseconds.
+         */
+        public String dump() {
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < TIMER_NAMES.length; i++) {
+                final long count = getCount(i);
+                builder.append(String.format(Locale.US,
+                        "%-20s count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                        TIMER_NAMES[i], count,
+                        count > 0 ? mTotalNanos[i] / 1000.0 / count : 0.0,
+                        getPercentileNanos(i, 50) / 1000.0,
+                        getPercentileNanos(i, 90) / 1000.0,
+                        getPercentileNanos(i, 99) / 1000.0,
+                        mMaxNanos[i] / 1000.0));
+            }
+            for (int i = 0; i < COUNTER_NAMES.length; i++) {
+                builder.append(String.format(Locale.US, "%-20s %d%n", COUNTER_NAMES[i],
+                        mCounters[i]));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return dump();
+        }
+    }
+}
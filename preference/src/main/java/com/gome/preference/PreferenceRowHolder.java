@@ -0,0 +1,151 @@
+package com.gome.preference;
+
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * The views of an {@code origin_preference} row, looked up once, together with what was last
+ * bound to them.
+ * <p>
+ * Rows are recycled between preferences and rebound on every {@code notifyChanged}, mostly
+ * with the same content. Binding through the holder only touches a view when its content
+ * differs from the last bind, so an unchanged rebind neither looks up views nor requests a
+ * layout.
+ */
+final class PreferenceRowHolder {
+
+    final TextView title;
+    final TextView summary;
+    final ImageView icon;
+
+    private final View mRow;
+
+    // The preference the row was last bound to.
+    Object boundPreference;
+
+    private int mWidgetId;
+    private View mWidget;
+
+    // Last bound state, only valid once the matching flag is set.
+    private CharSequence mBoundTitle;
+    private CharSequence mBoundSummary;
+    private Drawable mBoundIcon;
+    private boolean mBoundEnabled;
+    private boolean mTitleBound;
+    private boolean mSummaryBound;
+    private boolean mIconBound;
+    private boolean mEnabledBound;
+
+    private PreferenceRowHolder(View row) {
+        mRow = row;
+        title = (TextView) row.findViewById(android.R.id.title);
+        summary = (TextView) row.findViewById(android.R.id.summary);
+        icon = (ImageView) row.findViewById(android.R.id.icon);
+    }
+
+    /**
+     * @return The holder of {@code row}, created on first use.
+     */
+    static PreferenceRowHolder get(View row) {
+        PreferenceRowHolder holder = (PreferenceRowHolder) row.getTag(R.id.preference_row_holder);
+        if (holder == null) {
+            holder = new PreferenceRowHolder(row);
+            row.setTag(R.id.preference_row_holder, holder);
+        }
+        return holder;
+    }
+
+    /**
+     * @return The widget view with {@code id}, looked up once per row.
+     */
+    View getWidget(int id) {
+        if (mWidgetId != id) {
+            mWidget = mRow.findViewById(id);
+            mWidgetId = id;
+        }
+        return mWidget;
+    }
+
+    void bindTitle(CharSequence text) {
+        if (title != null && (!mTitleBound || !same(mBoundTitle, text))) {
+            bindText(title, text);
+        }
+        mBoundTitle = text;
+        mTitleBound = true;
+    }
+
+    void bindSummary(CharSequence text) {
+        if (summary != null && (!mSummaryBound || !same(mBoundSummary, text))) {
+            bindText(summary, text);
+        }
+        mBoundSummary = text;
+        mSummaryBound = true;
+    }
+
+    /**
+     * @return Whether the summary view shows {@code text}, so binding it would not change it.
+     */
+    boolean isSummaryBound(CharSequence text) {
+        return mSummaryBound && same(mBoundSummary, text);
+    }
+
+    void bindIcon(Drawable drawable) {
+        if (!mIconBound || mBoundIcon != drawable) {
+            if (icon != null) {
+                if (drawable != null) {
+                    icon.setImageDrawable(drawable);
+                }
+                setVisibility(icon, drawable != null ? View.VISIBLE : View.GONE);
+            }
+        }
+        mBoundIcon = drawable;
+        mIconBound = true;
+    }
+
+    /**
+     * Sets the enabled state of the whole row, as {@code Preference.onBindView} does for
+     * preferences that disable their view.
+     */
+    void bindEnabled(boolean enabled) {
+        if (!mEnabledBound || mBoundEnabled != enabled) {
+            setEnabledStateOnViews(mRow, enabled);
+        }
+        mBoundEnabled = enabled;
+        mEnabledBound = true;
+    }
+
+    private static void bindText(TextView view, CharSequence text) {
+        final boolean empty = text == null || text.length() == 0;
+        if (!empty) {
+            view.setText(text);
+        }
+        setVisibility(view, empty ? View.GONE : View.VISIBLE);
+    }
+
+    private static void setVisibility(View view, int visibility) {
+        if (view.getVisibility() != visibility) {
+            view.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * Only the same instance, or equal plain strings, count as unchanged; equal text with
+     * different spans has to be rebound.
+     */
+    private static boolean same(CharSequence a, CharSequence b) {
+        return a == b || (a instanceof String && a.equals(b));
+    }
+
+    private static void setEnabledStateOnViews(View view, boolean enabled) {
+        view.setEnabled(enabled);
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                setEnabledStateOnViews(group.getChildAt(i), enabled);
+            }
+        }
+    }
+}
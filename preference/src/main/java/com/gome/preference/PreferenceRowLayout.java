@@ -0,0 +1,246 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The row of an {@code origin_preference}, in both hierarchies: the icon, the title with the
+ * summary below it, and the widget frame, measured and laid out in a single pass.
+ * <p>
+ * The nested, weighted {@code LinearLayout}s and the {@code RelativeLayout} this replaces
+ * measure their children at least twice. Here every child is measured once per pass: the
+ * icon and the widget frame first with their own size, then the title and the summary with
+ * the width left between them. The children are found by id, {@code android.R.id.icon},
+ * {@code android.R.id.title}, {@code android.R.id.summary} and
+ * {@code android.R.id.widget_frame}, and laid out from start to end; their margins apply.
+ * The text block and the other children are centered vertically.
+ * <p>
+ * An optional divider is drawn along the bottom edge, in place of a separate view per row,
+ * see {@link #setDividerHeight(int)}.
+ */
+public class PreferenceRowLayout extends ViewGroup {
+
+    private View mIcon;
+    private View mTitle;
+    private View mSummary;
+    private View mWidgetFrame;
+
+    private final Paint mDividerPaint = new Paint();
+    private int mDividerHeight;
+    private int mDividerInsetStart;
+
+    public PreferenceRowLayout(Context context) {
+        this(context, null);
+    }
+
+    public PreferenceRowLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mDividerPaint.setColor(0x33000000);
+    }
+
+    /**
+     * @param height The divider height in pixels, 0 for no divider. The default.
+     */
+    public void setDividerHeight(int height) {
+        if (mDividerHeight != height) {
+            mDividerHeight = height;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public int getDividerHeight() {
+        return mDividerHeight;
+    }
+
+    public void setDividerColor(int color) {
+        mDividerPaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * @param inset The distance from the start edge the divider starts at, in pixels.
+     */
+    public void setDividerInsetStart(int inset) {
+        mDividerInsetStart = inset;
+        invalidate();
+    }
+
+    private void findChildren() {
+        mIcon = null;
+        mTitle = null;
+        mSummary = null;
+        mWidgetFrame = null;
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            switch (child.getId()) {
+                case android.R.id.icon:
+                    mIcon = child;
+                    break;
+                case android.R.id.title:
+                    mTitle = child;
+                    break;
+                case android.R.id.summary:
+                    mSummary = child;
+                    break;
+                case android.R.id.widget_frame:
+                    mWidgetFrame = child;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        findChildren();
+        int usedWidth = getPaddingLeft() + getPaddingRight();
+        int maxHeight = 0;
+
+        // The icon and the widget keep their size, the texts get what is left.
+        if (isShown(mIcon)) {
+            measureChildWithMargins(mIcon, widthMeasureSpec, usedWidth, heightMeasureSpec, 0);
+            usedWidth += getMeasuredWidthWithMargins(mIcon);
+            maxHeight = getMeasuredHeightWithMargins(mIcon);
+        }
+        if (isShown(mWidgetFrame)) {
+            measureChildWithMargins(mWidgetFrame, widthMeasureSpec, usedWidth, heightMeasureSpec,
+                    0);
+            usedWidth += getMeasuredWidthWithMargins(mWidgetFrame);
+            maxHeight = Math.max(maxHeight, getMeasuredHeightWithMargins(mWidgetFrame));
+        }
+
+        int textWidth = 0;
+        int textHeight = 0;
+        if (isShown(mTitle)) {
+            measureChildWithMargins(mTitle, widthMeasureSpec, usedWidth, heightMeasureSpec, 0);
+            textWidth = getMeasuredWidthWithMargins(mTitle);
+            textHeight = getMeasuredHeightWithMargins(mTitle);
+        }
+        if (isShown(mSummary)) {
+            measureChildWithMargins(mSummary, widthMeasureSpec, usedWidth, heightMeasureSpec,
+                    textHeight);
+            textWidth = Math.max(textWidth, getMeasuredWidthWithMargins(mSummary));
+            textHeight += getMeasuredHeightWithMargins(mSummary);
+        }
+        maxHeight = Math.max(maxHeight, textHeight);
+
+        final int width = Math.max(usedWidth + textWidth, getSuggestedMinimumWidth());
+        final int height = Math.max(maxHeight + getPaddingTop() + getPaddingBottom()
+                + mDividerHeight, getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final boolean rtl = getLayoutDirection() == LAYOUT_DIRECTION_RTL;
+        final int top = getPaddingTop();
+        final int bottom = b - t - getPaddingBottom() - mDividerHeight;
+        // Offsets from the start and the end edge, mirrored in right to left layouts.
+        int start = rtl ? getPaddingRight() : getPaddingLeft();
+        int end = r - l - (rtl ? getPaddingLeft() : getPaddingRight());
+
+        if (isShown(mIcon)) {
+            final MarginLayoutParams lp = (MarginLayoutParams) mIcon.getLayoutParams();
+            start += lp.getMarginStart();
+            layoutChild(mIcon, start, centeredTop(mIcon, top, bottom), rtl);
+            start += mIcon.getMeasuredWidth() + lp.getMarginEnd();
+        }
+        if (isShown(mWidgetFrame)) {
+            final MarginLayoutParams lp = (MarginLayoutParams) mWidgetFrame.getLayoutParams();
+            end -= lp.getMarginEnd() + mWidgetFrame.getMeasuredWidth();
+            layoutChild(mWidgetFrame, end, centeredTop(mWidgetFrame, top, bottom), rtl);
+        }
+
+        final boolean titleShown = isShown(mTitle);
+        final boolean summaryShown = isShown(mSummary);
+        final int textHeight = (titleShown ? getMeasuredHeightWithMargins(mTitle) : 0)
+                + (summaryShown ? getMeasuredHeightWithMargins(mSummary) : 0);
+        int textTop = top + (bottom - top - textHeight) / 2;
+        if (titleShown) {
+            textTop = layoutText(mTitle, start, textTop, rtl);
+        }
+        if (summaryShown) {
+            layoutText(mSummary, start, textTop, rtl);
+        }
+    }
+
+    /**
+     * @return The top of the next text.
+     */
+    private int layoutText(View child, int start, int top, boolean rtl) {
+        final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        layoutChild(child, start + lp.getMarginStart(), top + lp.topMargin, rtl);
+        return top + getMeasuredHeightWithMargins(child);
+    }
+
+    private void layoutChild(View child, int start, int top, boolean rtl) {
+        final int width = child.getMeasuredWidth();
+        final int left = rtl ? getWidth() - start - width : start;
+        child.layout(left, top, left + width, top + child.getMeasuredHeight());
+    }
+
+    private static int centeredTop(View child, int top, int bottom) {
+        final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        return top + lp.topMargin + (bottom - top - getMeasuredHeightWithMargins(child)) / 2;
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mDividerHeight > 0) {
+            final int width = getWidth();
+            final boolean rtl = getLayoutDirection() == LAYOUT_DIRECTION_RTL;
+            canvas.drawRect(rtl ? 0 : mDividerInsetStart, getHeight() - mDividerHeight,
+                    rtl ? width - mDividerInsetStart : width, getHeight(), mDividerPaint);
+        }
+    }
+
+    private static boolean isShown(View child) {
+        return child != null && child.getVisibility() != GONE;
+    }
+
+    private static int getMeasuredWidthWithMargins(View child) {
+        final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        return child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+    }
+
+    private static int getMeasuredHeightWithMargins(View child) {
+        final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        return child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin;
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof MarginLayoutParams;
+    }
+
+    @Override
+    protected MarginLayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public MarginLayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected MarginLayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        if (p instanceof MarginLayoutParams) {
+            return new MarginLayoutParams((MarginLayoutParams) p);
+        }
+        return new MarginLayoutParams(p);
+    }
+}
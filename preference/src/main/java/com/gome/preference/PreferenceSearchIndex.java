@@ -0,0 +1,374 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.support.annotation.Nullable;
+import android.support.annotation.XmlRes;
+import android.util.AttributeSet;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over the texts of preference hierarchies, for a settings search
+ * spanning several screens.
+ * <p>
+ * The index is built from the preference XML of each screen, without creating the
+ * preferences: the title, summary, {@code summaryOn}, {@code summaryOff} and key of every
+ * element are split into lower case words. Building parses the XML and belongs on a worker
+ * thread, for example the {@link BackgroundExecutor}, querying takes a binary search per
+ * query word and an intersection of the sorted lists of the entries having the words:
+ * <pre>
+ * PreferenceSearchIndex index = new PreferenceSearchIndex.Builder(context)
+ *         .addScreen("storage", R.xml.preferences)
+ *         .addScreen("messages", R.xml.preferences_v7)
+ *         .build();
+ * for (PreferenceSearchIndex.Result result : index.query("auto del")) {
+ *     // Open result.getScreen() and scroll to result.getKey().
+ * }
+ * </pre>
+ * Every word of a query matches as a prefix, and a result has to match all of them. Only
+ * elements with a key are indexed, they are what a screen can scroll to. The index is
+ * immutable and can be queried from any thread.
+ */
+public final class PreferenceSearchIndex {
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private static final String[] TEXT_ATTRIBUTES = {"title", "summary", "summaryOn",
+            "summaryOff"};
+
+    // Sorted, with the entries containing each term in the same slot of mPostings.
+    private final String[] mTerms;
+    private final int[][] mPostings;
+    private final Result[] mEntries;
+
+    private PreferenceSearchIndex(String[] terms, int[][] postings, Result[] entries) {
+        mTerms = terms;
+        mPostings = postings;
+        mEntries = entries;
+    }
+
+    /**
+     * @return The number of indexed preferences.
+     */
+    public int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * Finds the preferences having a word starting with every word of {@code query}.
+     *
+     * @return The matches, those whose title matches first, otherwise in the order they were
+     * added. Empty for a query without words.
+     */
+    public List<Result> query(String query) {
+        final List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] matches = null;
+        for (int i = 0; i < words.size() && (matches == null || matches.length > 0); i++) {
+            final int[] wordMatches = getEntries(words.get(i));
+            matches = matches == null ? wordMatches : intersect(matches, wordMatches);
+        }
+
+        final ArrayList<Result> titleResults = new ArrayList<>();
+        final ArrayList<Result> otherResults = new ArrayList<>();
+        for (int entry : matches) {
+            final Result result = mEntries[entry];
+            if (titleMatches(result, words)) {
+                titleResults.add(result);
+            } else {
+                otherResults.add(result);
+            }
+        }
+        titleResults.addAll(otherResults);
+        return titleResults;
+    }
+
+    /**
+     * @return The sorted entries having a word starting with {@code word}. Not to be modified,
+     * it can be a posting list of the index.
+     */
+    private int[] getEntries(String word) {
+        final int start = lowerBound(word);
+        int end = start;
+        int count = 0;
+        while (end < mTerms.length && mTerms[end].startsWith(word)) {
+            count += mPostings[end].length;
+            end++;
+        }
+        if (end - start == 1) {
+            return mPostings[start];
+        }
+        // Several words have the prefix, merge their lists.
+        final int[] entries = new int[count];
+        int offset = 0;
+        for (int term = start; term < end; term++) {
+            System.arraycopy(mPostings[term], 0, entries, offset, mPostings[term].length);
+            offset += mPostings[term].length;
+        }
+        Arrays.sort(entries);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || entries[unique - 1] != entries[i]) {
+                entries[unique++] = entries[i];
+            }
+        }
+        return unique < count ? Arrays.copyOf(entries, unique) : entries;
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        final int[] entries = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                entries[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return count < entries.length ? Arrays.copyOf(entries, count) : entries;
+    }
+
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = mTerms.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mTerms[middle].compareTo(word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean titleMatches(Result result, List<String> words) {
+        for (String word : words) {
+            boolean found = false;
+            for (String titleWord : result.mTitleWords) {
+                if (titleWord.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits {@code text} into lower case runs of letters and digits.
+     */
+    static List<String> tokenize(CharSequence text) {
+        final ArrayList<String> words = new ArrayList<>();
+        final int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            final boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * A preference found by a query. Immutable.
+     */
+    public static final class Result {
+
+        private final String mScreen;
+        private final String mParentKey;
+        private final String mKey;
+        private final String mTitle;
+        final List<String> mTitleWords;
+
+        Result(String screen, @Nullable String parentKey, String key, @Nullable String title) {
+            mScreen = screen;
+            mParentKey = parentKey;
+            mKey = key;
+            mTitle = title;
+            mTitleWords = title != null ? tokenize(title) : Collections.<String>emptyList();
+        }
+
+        /**
+         * @return The screen the preference was added with.
+         */
+        public String getScreen() {
+            return mScreen;
+        }
+
+        /**
+         * @return The key of the nested {@code PreferenceScreen} holding the preference, or
+         * {@code null} if it is on the screen itself.
+         */
+        @Nullable
+        public String getParentKey() {
+            return mParentKey;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        @Nullable
+        public String getTitle() {
+            return mTitle;
+        }
+
+        @Override
+        public String toString() {
+            return mScreen + (mParentKey != null ? "/" + mParentKey : "") + ":" + mKey;
+        }
+    }
+
+    /**
+     * Collects the preferences of the screens to index.
+     */
+    public static final class Builder {
+
+        private final Resources mResources;
+        private final ArrayList<Result> mEntries = new ArrayList<>();
+        private final TreeMap<String, ArrayList<Integer>> mPostings = new TreeMap<>();
+
+        public Builder(Context context) {
+            mResources = context.getResources();
+        }
+
+        /**
+         * Indexes the preferences declared in {@code xmlResId}, without inflating them.
+         *
+         * @param screen The name results on this screen report, for example the name of the
+         *               fragment showing it.
+         */
+        public Builder addScreen(String screen, @XmlRes int xmlResId) {
+            final XmlResourceParser parser = mResources.getXml(xmlResId);
+            try {
+                return addScreen(screen, parser);
+            } finally {
+                parser.close();
+            }
+        }
+
+        /**
+         * Indexes the preferences declared in the XML read by {@code parser}, like
+         * {@link #addScreen(String, int)}. References to strings are only resolved if the
+         * parser reads compiled XML.
+         */
+        Builder addScreen(String screen, XmlPullParser parser) {
+            try {
+                // For each open element, the key of the nested screen its children are on.
+                final ArrayList<String> parentKeys = new ArrayList<>();
+                int type;
+                while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                    if (type == XmlPullParser.END_TAG) {
+                        parentKeys.remove(parentKeys.size() - 1);
+                        continue;
+                    }
+                    if (type != XmlPullParser.START_TAG) {
+                        continue;
+                    }
+                    final boolean root = parentKeys.isEmpty();
+                    final String parentKey = root ? null : parentKeys.get(parentKeys.size() - 1);
+                    final String key = getText(parser, "key");
+                    if (!root && key != null) {
+                        final String[] texts = new String[TEXT_ATTRIBUTES.length];
+                        for (int i = 0; i < texts.length; i++) {
+                            texts[i] = getText(parser, TEXT_ATTRIBUTES[i]);
+                        }
+                        add(screen, parentKey, key, texts);
+                    }
+                    parentKeys.add(!root && parser.getName().endsWith("PreferenceScreen")
+                            ? key : parentKey);
+                }
+            } catch (XmlPullParserException | IOException e) {
+                throw new IllegalArgumentException("Cannot index " + screen, e);
+            }
+            return this;
+        }
+
+        /**
+         * Indexes a preference that is not declared in XML.
+         *
+         * @param texts The title first, then any other texts to find the preference by.
+         */
+        public Builder add(String screen, @Nullable String parentKey, String key,
+                           String... texts) {
+            final int entry = mEntries.size();
+            mEntries.add(new Result(screen, parentKey, key, texts.length > 0 ? texts[0] : null));
+            addTerms(entry, key);
+            for (String text : texts) {
+                if (text != null) {
+                    addTerms(entry, text);
+                }
+            }
+            return this;
+        }
+
+        public PreferenceSearchIndex build() {
+            final String[] terms = new String[mPostings.size()];
+            final int[][] postings = new int[terms.length][];
+            int i = 0;
+            for (Map.Entry<String, ArrayList<Integer>> term : mPostings.entrySet()) {
+                terms[i] = term.getKey();
+                final ArrayList<Integer> entries = term.getValue();
+                postings[i] = new int[entries.size()];
+                for (int j = 0; j < postings[i].length; j++) {
+                    postings[i][j] = entries.get(j);
+                }
+                i++;
+            }
+            return new PreferenceSearchIndex(terms, postings,
+                    mEntries.toArray(new Result[mEntries.size()]));
+        }
+
+        private void addTerms(int entry, String text) {
+            for (String word : tokenize(text)) {
+                ArrayList<Integer> entries = mPostings.get(word);
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                    mPostings.put(word, entries);
+                }
+                // Entries are added in order, so a repeated word repeats the last entry.
+                if (entries.isEmpty() || entries.get(entries.size() - 1) != entry) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        @Nullable
+        private String getText(XmlPullParser parser, String attribute) {
+            final int resId = parser instanceof AttributeSet ? ((AttributeSet) parser)
+                    .getAttributeResourceValue(ANDROID_NS, attribute, 0) : 0;
+            if (resId != 0) {
+                return mResources.getString(resId);
+            }
+            return parser.getAttributeValue(ANDROID_NS, attribute);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.gome.preference;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Trace points for the bind path of this library, in both the framework and the
+ * {@code support} hierarchy, recorded into a preallocated ring buffer instead of the log.
+ * <p>
+ * A trace point records the event, the key of the preference and an int value, without
+ * allocating or formatting anything. Guard every trace point with {@link #ENABLED}, so release
+ * builds drop it at compile time:
+ * <pre>
+ * if (PreferenceTrace.ENABLED) {
+ *     PreferenceTrace.trace(PreferenceTrace.SYNC_SWITCH, getKey(), isChecked() ? 1 : 0);
+ * }
+ * </pre>
+ * The last {@link #CAPACITY} events are kept, call {@link #dump()} to read them, for example
+ * from a debugger or a bug report.
+ */
+public final class PreferenceTrace {
+
+    /**
+     * Whether tracing is compiled in, only in debug builds of the library.
+     */
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    public static final int CAPACITY = 512;
+
+    /**
+     * A preference was created. The value is its widget layout resource.
+     */
+    public static final int INIT = 0;
+    /**
+     * A row was bound in full. The value is 0.
+     */
+    public static final int BIND = 1;
+    /**
+     * A row was bound partially from change payloads. The value is the payload count.
+     */
+    public static final int BIND_PARTIAL = 2;
+    /**
+     * The checked state was set. The value is the new state.
+     */
+    public static final int SET_CHECKED = 3;
+    /**
+     * A switch widget was synced with the checked state. The value is the state.
+     */
+    public static final int SYNC_SWITCH = 4;
+
+    private static final String[] EVENT_NAMES = {
+            "init", "bind", "bindPartial", "setChecked", "syncSwitch"};
+
+    private static final int SIZE = ENABLED ? CAPACITY : 0;
+
+    // Guarded by the class.
+    private static final long[] sTimes = new long[SIZE];
+    private static final int[] sEvents = new int[SIZE];
+    private static final String[] sKeys = new String[SIZE];
+    private static final int[] sValues = new int[SIZE];
+    private static int sNext;
+    private static int sCount;
+
+    private PreferenceTrace() {
+    }
+
+    /**
+     * Records an event. Only call this guarded by {@link #ENABLED}.
+     *
+     * @param event One of the event constants, such as {@link #BIND}.
+     * @param key   The key of the preference, may be {@code null}.
+     * @param value A value depending on the event.
+     */
+    public static synchronized void trace(int event, String key, int value) {
+        if (SIZE == 0) {
+            return;
+        }
+        sTimes[sNext] = SystemClock.elapsedRealtimeNanos();
+        sEvents[sNext] = event;
+        sKeys[sNext] = key;
+        sValues[sNext] = value;
+        sNext = (sNext + 1) % SIZE;
+        sCount = Math.min(sCount + 1, SIZE);
+    }
+
+    /**
+     * @return The recorded events, oldest first, one per line with its time in microseconds
+     * relative to the oldest.
+     */
+    public static synchronized String dump() {
+        final StringBuilder builder = new StringBuilder();
+        final int first = (sNext - sCount + SIZE) % Math.max(SIZE, 1);
+        for (int i = 0; i < sCount; i++) {
+            final int index = (first + i) % SIZE;
+            builder.append(String.format(Locale.US, "%10d %-12s %s %d%n",
+                    (sTimes[index] - sTimes[first]) / 1000, EVENT_NAMES[sEvents[index]],
+                    sKeys[index], sValues[index]));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Drops the recorded events.
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i < SIZE; i++) {
+            sKeys[i] = null;
+        }
+        sNext = 0;
+        sCount = 0;
+    }
+}
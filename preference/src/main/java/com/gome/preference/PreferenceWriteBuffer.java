@@ -0,0 +1,271 @@
+package com.gome.preference;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces the boolean writes of all {@link TwoStatePreference}s, from both the framework
+ * and the {@code support} hierarchy, into batched {@link SharedPreferences} edits.
+ * <p>
+ * In the default {@link #MODE_IMMEDIATE} every {@code setChecked} persists on its own, exactly
+ * like the platform preferences do. In {@link #MODE_PER_FRAME} or {@link #MODE_INTERVAL} the
+ * written values are only remembered as dirty keys, and a single {@link SharedPreferences.Editor}
+ * per preferences file is applied on the next frame or after the configured interval. Reads
+ * through {@code getPersistedBoolean} see the buffered values, so the preferences behave as if
+ * the write had already happened.
+ * <p>
+ * Other writers, such as a {@link TwoStateTable}, can take part in the same flush through
+ * {@link #schedule(PendingWrite)}. Those are deferred to the next frame in every mode, since
+ * each of their writes is more expensive than a single boolean.
+ * <p>
+ * Writes between {@link #beginTransaction()} and {@link #endTransaction()} are buffered in
+ * any mode, and flushed together when the transaction ends.
+ * <p>
+ * Call {@link #flush()} from lifecycle callbacks such as {@code onPause} so no buffered value
+ * is lost when the process goes away.
+ */
+public final class PreferenceWriteBuffer {
+
+    /**
+     * Every write is persisted right away. This is the default.
+     */
+    public static final int MODE_IMMEDIATE = 0;
+
+    /**
+     * Writes are flushed once per frame, on the next {@link Choreographer} callback.
+     */
+    public static final int MODE_PER_FRAME = 1;
+
+    /**
+     * Writes are flushed once every {@link #setFlushInterval(long) flush interval}.
+     */
+    public static final int MODE_INTERVAL = 2;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    private static final Object sLock = new Object();
+    private static final Map<SharedPreferences, Map<String, Boolean>> sPending =
+            new LinkedHashMap<>();
+    private static final Set<PendingWrite> sPendingWrites = new LinkedHashSet<>();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static int sMode = MODE_IMMEDIATE;
+    private static long sFlushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private static boolean sFlushScheduled;
+    private static int sTransactionDepth;
+
+    private static final Runnable sFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private static final Choreographer.FrameCallback sFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    flush();
+                }
+            };
+
+    /**
+     * A write that is performed on the next flush, see {@link #schedule(PendingWrite)}.
+     */
+    public interface PendingWrite {
+        /**
+         * Persists everything that changed since the last call.
+         */
+        void write();
+    }
+
+    private PreferenceWriteBuffer() {
+    }
+
+    /**
+     * Sets how boolean writes are persisted. Switching back to {@link #MODE_IMMEDIATE}
+     * flushes everything that is still buffered.
+     *
+     * @param mode One of {@link #MODE_IMMEDIATE}, {@link #MODE_PER_FRAME} or
+     *             {@link #MODE_INTERVAL}.
+     */
+    public static void setMode(int mode) {
+        if (mode != MODE_IMMEDIATE && mode != MODE_PER_FRAME && mode != MODE_INTERVAL) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        synchronized (sLock) {
+            sMode = mode;
+        }
+        if (mode == MODE_IMMEDIATE) {
+            flush();
+        }
+    }
+
+    /**
+     * @return The current persistence mode.
+     */
+    public static int getMode() {
+        synchronized (sLock) {
+            return sMode;
+        }
+    }
+
+    /**
+     * Sets the delay between a write and its flush in {@link #MODE_INTERVAL}.
+     *
+     * @param intervalMillis The interval in milliseconds, must not be negative.
+     */
+    public static void setFlushInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Negative interval " + intervalMillis);
+        }
+        synchronized (sLock) {
+            sFlushIntervalMillis = intervalMillis;
+        }
+    }
+
+    /**
+     * @return Whether writes are currently buffered instead of persisted right away.
+     */
+    public static boolean isBuffering() {
+        synchronized (sLock) {
+            return sMode != MODE_IMMEDIATE || sTransactionDepth > 0;
+        }
+    }
+
+    /**
+     * Buffers all writes until the matching {@link #endTransaction()}, whatever the mode.
+     * Transactions nest.
+     */
+    public static void beginTransaction() {
+        synchronized (sLock) {
+            sTransactionDepth++;
+        }
+    }
+
+    /**
+     * Ends a transaction. Ending the outermost one flushes the writes buffered in it.
+     */
+    public static void endTransaction() {
+        synchronized (sLock) {
+            if (sTransactionDepth == 0) {
+                throw new IllegalStateException("No transaction to end");
+            }
+            if (--sTransactionDepth > 0) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Buffers {@code value} for {@code key} and schedules a flush.
+     */
+    public static void putBoolean(SharedPreferences preferences, String key, boolean value) {
+        synchronized (sLock) {
+            Map<String, Boolean> dirty = sPending.get(preferences);
+            if (dirty == null) {
+                dirty = new LinkedHashMap<>();
+                sPending.put(preferences, dirty);
+            }
+            dirty.put(key, value);
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * Runs {@code write} with the next flush. Scheduling the same write several times before a
+     * flush runs it once. In {@link #MODE_IMMEDIATE} the flush happens on the next frame.
+     */
+    public static void schedule(PendingWrite write) {
+        synchronized (sLock) {
+            sPendingWrites.add(write);
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * @return Whether a value for {@code key} is waiting to be flushed.
+     */
+    public static boolean hasPendingBoolean(SharedPreferences preferences, String key) {
+        synchronized (sLock) {
+            Map<String, Boolean> dirty = sPending.get(preferences);
+            return dirty != null && dirty.containsKey(key);
+        }
+    }
+
+    /**
+     * @return The buffered value for {@code key}, or {@code defValue} if there is none.
+     */
+    public static boolean getPendingBoolean(SharedPreferences preferences, String key,
+                                            boolean defValue) {
+        synchronized (sLock) {
+            Map<String, Boolean> dirty = sPending.get(preferences);
+            Boolean value = dirty != null ? dirty.get(key) : null;
+            return value != null ? value : defValue;
+        }
+    }
+
+    /**
+     * Writes every buffered value, using one {@link SharedPreferences.Editor} per preferences
+     * file. Safe to call at any time, does nothing if there is nothing buffered.
+     */
+    public static void flush() {
+        final Map<SharedPreferences, Map<String, Boolean>> pending;
+        final List<PendingWrite> pendingWrites;
+        synchronized (sLock) {
+            if (sFlushScheduled) {
+                sHandler.removeCallbacks(sFlushRunnable);
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    Choreographer.getInstance().removeFrameCallback(sFrameCallback);
+                }
+                sFlushScheduled = false;
+            }
+            if (sPending.isEmpty() && sPendingWrites.isEmpty()) {
+                return;
+            }
+            pending = new LinkedHashMap<>(sPending);
+            sPending.clear();
+            pendingWrites = new ArrayList<>(sPendingWrites);
+            sPendingWrites.clear();
+        }
+
+        final long ioStart = MainThreadIoDetector.begin();
+        for (Map.Entry<SharedPreferences, Map<String, Boolean>> entry : pending.entrySet()) {
+            SharedPreferences.Editor editor = entry.getKey().edit();
+            for (Map.Entry<String, Boolean> value : entry.getValue().entrySet()) {
+                editor.putBoolean(value.getKey(), value.getValue());
+            }
+            editor.apply();
+        }
+        for (PendingWrite write : pendingWrites) {
+            write.write();
+        }
+        MainThreadIoDetector.end(MainThreadIoDetector.WRITE, null, ioStart);
+    }
+
+    private static void scheduleFlushLocked() {
+        if (sFlushScheduled || sTransactionDepth > 0) {
+            // A transaction flushes when it ends.
+            return;
+        }
+        sFlushScheduled = true;
+        if (sMode != MODE_INTERVAL && Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(sFrameCallback);
+        } else if (sMode == MODE_INTERVAL) {
+            sHandler.postDelayed(sFlushRunnable, sFlushIntervalMillis);
+        } else {
+            // Per frame from a background thread; the Choreographer is thread local.
+            sHandler.post(sFlushRunnable);
+        }
+    }
+}
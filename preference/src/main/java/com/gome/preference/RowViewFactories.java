@@ -0,0 +1,109 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide registry of the {@link RowViewFactory} used for each preference class.
+ * <p>
+ * Both {@link CustomPreference#onCreateView} and the {@code support}
+ * {@link com.gome.preference.support.CustomPreferenceGroupAdapter} consult it before falling
+ * back to layout inflation. The lookup is by exact class, so a subclass with a different
+ * widget does not pick up the factory of its parent by accident.
+ * <p>
+ * Rows that are interchangeable share a row type, see {@link #getRowType}. Row types are what
+ * {@link RowViewPool} builds ahead of time and what adapters use as view types.
+ */
+public final class RowViewFactories {
+
+    private static final Map<Class<?>, RowViewFactory> sFactories = new HashMap<>();
+
+    private RowViewFactories() {
+    }
+
+    /**
+     * Builds the rows of {@code preferenceClass} with {@code factory}.
+     *
+     * @param factory The factory, or {@code null} to inflate the rows from XML again.
+     */
+    public static synchronized void register(Class<?> preferenceClass,
+                                             @Nullable RowViewFactory factory) {
+        if (factory == null) {
+            sFactories.remove(preferenceClass);
+        } else {
+            sFactories.put(preferenceClass, factory);
+        }
+    }
+
+    /**
+     * Registers the {@link OriginRowViewFactory}s for the preference classes of this library
+     * that use {@code origin_preference}.
+     */
+    public static void registerDefaults() {
+        register(CustomPreference.class, OriginRowViewFactory.PLAIN);
+        register(SwitchPreference.class, OriginRowViewFactory.SWITCH);
+        register(com.gome.preference.support.CustomPreference.class, OriginRowViewFactory.PLAIN);
+        register(com.gome.preference.support.SwitchPreference.class, OriginRowViewFactory.SWITCH);
+    }
+
+    /**
+     * @return The factory registered for {@code preferenceClass}, if any.
+     */
+    @Nullable
+    public static synchronized RowViewFactory get(Class<?> preferenceClass) {
+        return sFactories.get(preferenceClass);
+    }
+
+    /**
+     * Returns the row type of a preference, the key under which its rows can be reused and
+     * pooled: the registered factory if there is one, otherwise the widget layout resource
+     * for rows inflated from {@code origin_preference}.
+     *
+     * @param preferenceClass   The class of the preference.
+     * @param layoutResId       The layout resource of the preference.
+     * @param widgetLayoutResId The widget layout resource of the preference, or 0.
+     * @return The row type, or {@code null} if the rows use some other layout and are left to
+     * the platform.
+     */
+    @Nullable
+    public static Object getRowType(Class<?> preferenceClass, int layoutResId,
+                                    int widgetLayoutResId) {
+        RowViewFactory factory = get(preferenceClass);
+        if (factory != null) {
+            return factory;
+        }
+        if (layoutResId != R.layout.origin_preference) {
+            return null;
+        }
+        return widgetLayoutResId;
+    }
+
+    /**
+     * Creates a new row of {@code rowType}. Safe to call from a worker thread.
+     *
+     * @param rowType A row type returned by {@link #getRowType}.
+     */
+    public static View createRow(Context context, ViewGroup parent, Object rowType) {
+        if (rowType instanceof RowViewFactory) {
+            return ((RowViewFactory) rowType).createRow(context, parent);
+        }
+
+        LayoutInflater layoutInflater = LayoutInflater.from(context);
+        View layout = layoutInflater.inflate(R.layout.origin_preference, parent, false);
+
+        ViewGroup widgetFrame = (ViewGroup) layout.findViewById(android.R.id.widget_frame);
+        int widgetLayoutResId = (Integer) rowType;
+        if (widgetLayoutResId != 0) {
+            layoutInflater.inflate(widgetLayoutResId, widgetFrame);
+        }
+        widgetFrame.setVisibility(widgetLayoutResId != 0 ? View.VISIBLE : View.GONE);
+
+        return layout;
+    }
+}
@@ -0,0 +1,23 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Builds the row view of a preference in code, in place of inflating its layout and widget
+ * layout from XML.
+ * <p>
+ * A factory has to produce the same view tree, with the same ids, as the layouts it replaces
+ * so binding works unchanged. Factories are chosen per preference class through
+ * {@link RowViewFactories}.
+ */
+public interface RowViewFactory {
+
+    /**
+     * @param context The context to create the views with.
+     * @param parent  The parent the row will be attached to, only used for layout params.
+     * @return The new row.
+     */
+    View createRow(Context context, ViewGroup parent);
+}
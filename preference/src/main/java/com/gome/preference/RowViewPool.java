@@ -0,0 +1,335 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Rows built ahead of time on a worker thread, so the first rows of a screen do not have to
+ * be inflated on the main thread when they scroll into view.
+ * <p>
+ * A fragment creates a pool while it is being created, right after its preferences are added,
+ * and makes it the default pool:
+ * <pre>
+ * addPreferencesFromResource(R.xml.preferences);
+ * mRowViewPool = new RowViewPool(getActivity());
+ * mRowViewPool.prefill(getPreferenceScreen());
+ * RowViewPool.setDefault(mRowViewPool);
+ * </pre>
+ * {@link CustomPreference#onCreateView} and the {@code support}
+ * {@link com.gome.preference.support.CustomPreferenceGroupAdapter} then take their rows from
+ * the default pool through {@link #obtain(Context, Object)} and only build one themselves when
+ * the pool has none of the right type ready. Call {@link #release()} in {@code onDestroy}.
+ * <p>
+ * By default the pool holds as many rows as fit on the screen, see {@link #rowsOnScreen}, and
+ * of the types of the rows the screen starts with. Each type has a target number of rows,
+ * raised whenever a row is asked for when the pool had none of its type. Once half of the rows
+ * of a type are taken they are built up to the target again in the background while there is
+ * room, so the screens shown after the first one, and the rows they scroll in, find rows ready
+ * as well.
+ */
+public final class RowViewPool {
+
+    private static final int DEFAULT_ROWS_ON_SCREEN = 10;
+
+    private static volatile RowViewPool sDefault;
+
+    private final Context mContext;
+    private final int mCapacity;
+
+    // Guarded by this.
+    private final HashMap<Object, Rows> mRows = new HashMap<>();
+    // Rows ready or being built, at most mCapacity.
+    private int mCount;
+    private boolean mReleased;
+
+    /**
+     * Creates a pool holding as many rows as fit on the screen.
+     *
+     * @param context The context the rows are built with, this has to be the context of the
+     *                preferences for the rows to be used.
+     */
+    public RowViewPool(Context context) {
+        this(context, rowsOnScreen(context));
+    }
+
+    /**
+     * @param context  The context the rows are built with.
+     * @param capacity The maximum number of rows built ahead of time.
+     */
+    public RowViewPool(Context context, int capacity) {
+        mContext = context;
+        mCapacity = capacity;
+    }
+
+    /**
+     * Sets the pool rows are taken from by {@link #obtain(Context, Object)}.
+     *
+     * @param pool The pool, or {@code null} to build every row on demand.
+     */
+    public static void setDefault(@Nullable RowViewPool pool) {
+        sDefault = pool;
+    }
+
+    /**
+     * @return The pool set with {@link #setDefault(RowViewPool)}, if any.
+     */
+    @Nullable
+    public static RowViewPool getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Takes a ready row of {@code rowType} from the default pool, if the pool was built for
+     * {@code context}.
+     *
+     * @return The row, or {@code null} if the caller has to build it.
+     */
+    @Nullable
+    public static View obtain(Context context, @Nullable Object rowType) {
+        final RowViewPool pool = sDefault;
+        if (pool == null || rowType == null || pool.mContext != context) {
+            return null;
+        }
+        final View row = pool.acquire(rowType);
+        PreferenceMetrics.increment(row != null ? PreferenceMetrics.ROW_POOL_HIT
+                : PreferenceMetrics.ROW_POOL_MISS);
+        // The next rows of the type are likely asked for soon.
+        pool.refill(rowType, row == null);
+        return row;
+    }
+
+    /**
+     * Returns the number of preference rows that fit on the screen of {@code context}: the
+     * screen height divided by {@code listPreferredItemHeight}, plus the row that is only
+     * partially visible and the next one scrolled in.
+     */
+    public static int rowsOnScreen(Context context) {
+        TypedValue value = new TypedValue();
+        if (!context.getTheme().resolveAttribute(android.R.attr.listPreferredItemHeight, value,
+                true)) {
+            return DEFAULT_ROWS_ON_SCREEN;
+        }
+        int rowHeight = (int) value.getDimension(context.getResources().getDisplayMetrics());
+        if (rowHeight <= 0) {
+            return DEFAULT_ROWS_ON_SCREEN;
+        }
+        return context.getResources().getDisplayMetrics().heightPixels / rowHeight + 2;
+    }
+
+    /**
+     * @return The maximum number of rows built ahead of time.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Starts building the rows for the first rows of {@code group}, as the framework
+     * {@link android.preference.PreferenceGroupAdapter} would list them.
+     */
+    public void prefill(android.preference.PreferenceGroup group) {
+        List<Object> rowTypes = new ArrayList<>();
+        collectRowTypes(group, rowTypes, new int[]{mCapacity});
+        prefill(rowTypes);
+    }
+
+    /**
+     * Starts building the rows for the first rows of the {@code support} {@code group}, as
+     * {@link android.support.v7.preference.PreferenceGroupAdapter} would list them.
+     */
+    public void prefill(android.support.v7.preference.PreferenceGroup group) {
+        List<Object> rowTypes = new ArrayList<>();
+        collectRowTypes(group, rowTypes, new int[]{mCapacity});
+        prefill(rowTypes);
+    }
+
+    /**
+     * Takes a ready row of {@code rowType}.
+     *
+     * @return The row, or {@code null} if there is none ready.
+     */
+    @Nullable
+    public synchronized View acquire(Object rowType) {
+        final Rows rows = mRows.get(rowType);
+        final View row = rows != null ? rows.mReady.poll() : null;
+        if (row != null) {
+            mCount--;
+        }
+        return row;
+    }
+
+    /**
+     * @return The number of rows ready to be taken.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Rows rows : mRows.values()) {
+            size += rows.mReady.size();
+        }
+        return size;
+    }
+
+    /**
+     * Drops the ready rows and stops building new ones. Also stops this pool from being the
+     * default pool.
+     */
+    public void release() {
+        synchronized (this) {
+            mReleased = true;
+            mRows.clear();
+            mCount = 0;
+        }
+        if (sDefault == this) {
+            sDefault = null;
+        }
+    }
+
+    private void prefill(List<Object> rowTypes) {
+        // One row per task, so the first rows are ready as soon as possible.
+        for (Object rowType : rowTypes) {
+            synchronized (this) {
+                if (mReleased) {
+                    return;
+                }
+                getRows(rowType).mTarget++;
+            }
+            if (!build(rowType)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tops the rows of {@code rowType} up to their target once half of them are taken, so a
+     * scroll taking row after row only schedules work every few rows.
+     *
+     * @param missed Whether a row was asked for when the pool had none, which raises the
+     *               target.
+     */
+    private void refill(Object rowType, boolean missed) {
+        final int builds;
+        synchronized (this) {
+            if (mReleased) {
+                return;
+            }
+            final Rows rows = getRows(rowType);
+            if (missed && rows.mTarget < mCapacity) {
+                rows.mTarget++;
+            }
+            final int available = rows.mReady.size() + rows.mBuilding;
+            if (available * 2 >= rows.mTarget) {
+                return;
+            }
+            builds = rows.mTarget - available;
+        }
+        for (int i = 0; i < builds; i++) {
+            if (!build(rowType)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts building a row of {@code rowType}.
+     *
+     * @return Whether there was room for it.
+     */
+    private boolean build(final Object rowType) {
+        synchronized (this) {
+            if (mReleased || mCount >= mCapacity) {
+                return false;
+            }
+            mCount++;
+            getRows(rowType).mBuilding++;
+        }
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RowViewPool.this) {
+                    if (mReleased) {
+                        return;
+                    }
+                }
+                // The parent only provides layout params for the row's root.
+                View row = RowViewFactories.createRow(mContext, new FrameLayout(mContext),
+                        rowType);
+                synchronized (RowViewPool.this) {
+                    if (mReleased) {
+                        return;
+                    }
+                    final Rows rows = getRows(rowType);
+                    rows.mBuilding--;
+                    rows.mReady.add(row);
+                }
+            }
+        });
+        return true;
+    }
+
+    // Guarded by this.
+    private Rows getRows(Object rowType) {
+        Rows rows = mRows.get(rowType);
+        if (rows == null) {
+            rows = new Rows();
+            mRows.put(rowType, rows);
+        }
+        return rows;
+    }
+
+    private static void collectRowTypes(android.preference.PreferenceGroup group,
+                                        List<Object> rowTypes, int[] remaining) {
+        for (int i = 0; i < group.getPreferenceCount() && remaining[0] > 0; i++) {
+            android.preference.Preference preference = group.getPreference(i);
+            remaining[0]--;
+            if (preference instanceof CustomPreference) {
+                Object rowType = RowViewFactories.getRowType(preference.getClass(),
+                        ((CustomPreference) preference).getRowLayoutResource(),
+                        preference.getWidgetLayoutResource());
+                if (rowType != null) {
+                    rowTypes.add(rowType);
+                }
+            }
+            if (preference instanceof android.preference.PreferenceGroup
+                    && !(preference instanceof android.preference.PreferenceScreen)) {
+                collectRowTypes((android.preference.PreferenceGroup) preference, rowTypes,
+                        remaining);
+            }
+        }
+    }
+
+    private static void collectRowTypes(android.support.v7.preference.PreferenceGroup group,
+                                        List<Object> rowTypes, int[] remaining) {
+        for (int i = 0; i < group.getPreferenceCount() && remaining[0] > 0; i++) {
+            android.support.v7.preference.Preference preference = group.getPreference(i);
+            if (!preference.isVisible()) {
+                continue;
+            }
+            remaining[0]--;
+            Object rowType = RowViewFactories.getRowType(preference.getClass(),
+                    preference.getLayoutResource(), preference.getWidgetLayoutResource());
+            if (rowType != null) {
+                rowTypes.add(rowType);
+            }
+            if (preference instanceof android.support.v7.preference.PreferenceGroup
+                    && !(preference instanceof android.support.v7.preference.PreferenceScreen)) {
+                collectRowTypes((android.support.v7.preference.PreferenceGroup) preference,
+                        rowTypes, remaining);
+            }
+        }
+    }
+
+    private static final class Rows {
+        final ArrayDeque<View> mReady = new ArrayDeque<>();
+        int mBuilding;
+        // The number of rows of the type the pool keeps ready or being built.
+        int mTarget;
+    }
+}
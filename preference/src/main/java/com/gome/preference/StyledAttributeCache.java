@@ -0,0 +1,243 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Cache of resolved styled attributes for the constructors of the preferences in this
+ * library, both the framework and the {@code support} ones.
+ * <p>
+ * The rows of a hierarchy are mostly identical, so resolving their attributes through
+ * {@link Context#obtainStyledAttributes} for every preference repeats the same work. Here the
+ * values are resolved once per distinct combination of theme, configuration, default style
+ * and the attributes a row sets itself, then shared. The row's own attributes are part of the
+ * key because the inflater reuses a single {@link AttributeSet} for all elements of a file.
+ * <p>
+ * The attribute arrays passed in have to be constants, they are compared by identity, and so
+ * are themes. Themes are held weakly, the values resolved for a theme that is gone are evicted
+ * in time. A theme in use that gets another style applied needs a {@link #clear()}.
+ */
+public final class StyledAttributeCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static final LruCache<Key, Values> sCache = new LruCache<>(MAX_ENTRIES);
+
+    private StyledAttributeCache() {
+    }
+
+    /**
+     * Resolves {@code attrs} like {@link Context#obtainStyledAttributes(AttributeSet, int[],
+     * int, int)}, or returns the values resolved before for the same style.
+     */
+    public static Values obtain(Context context, @Nullable AttributeSet set, int[] attrs,
+                                int defStyleAttr, int defStyleRes) {
+        final Key key = new Key(context, set, attrs, defStyleAttr, defStyleRes);
+        Values values = sCache.get(key);
+        if (values == null) {
+            TypedArray typedArray =
+                    context.obtainStyledAttributes(set, attrs, defStyleAttr, defStyleRes);
+            values = new Values(typedArray);
+            typedArray.recycle();
+            sCache.put(key.copy(), values);
+        }
+        return values;
+    }
+
+    public static int getHitCount() {
+        return sCache.hitCount();
+    }
+
+    public static int getMissCount() {
+        return sCache.missCount();
+    }
+
+    /**
+     * Drops every resolved value, to be called when a theme in use changes.
+     */
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    /**
+     * Resolved attribute values, indexed like the attribute array they were resolved for.
+     * Immutable.
+     */
+    public static final class Values {
+
+        private final TypedValue[] mValues;
+
+        Values(TypedArray typedArray) {
+            mValues = new TypedValue[typedArray.length()];
+            for (int i = 0; i < mValues.length; i++) {
+                TypedValue value = new TypedValue();
+                if (typedArray.getValue(i, value)) {
+                    mValues[i] = value;
+                }
+            }
+        }
+
+        /**
+         * @see TypedArray#getString(int)
+         */
+        @Nullable
+        public String getString(int index) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return null;
+            }
+            final CharSequence string = value.coerceToString();
+            return string != null ? string.toString() : null;
+        }
+
+        /**
+         * @see TypedArray#getBoolean(int, boolean)
+         */
+        public boolean getBoolean(int index, boolean defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (value.type >= TypedValue.TYPE_FIRST_INT
+                    && value.type <= TypedValue.TYPE_LAST_INT) {
+                return value.data != 0;
+            }
+            if (value.type == TypedValue.TYPE_STRING && value.string != null) {
+                return "true".equalsIgnoreCase(value.string.toString());
+            }
+            return defValue;
+        }
+
+        /**
+         * @see TypedArray#getResourceId(int, int)
+         */
+        public int getResourceId(int index, int defValue) {
+            final TypedValue value = mValues[index];
+            return value != null && value.resourceId != 0 ? value.resourceId : defValue;
+        }
+    }
+
+    private static final class Key {
+        private static final int[] EMPTY_IDS = new int[0];
+        private static final String[] EMPTY_VALUES = new String[0];
+
+        // Weak, the theme holds the resources and often the activity.
+        private final WeakReference<Resources.Theme> mTheme;
+        private final int mThemeIdentity;
+        // The live configuration of the resources for a lookup, a copy once cached.
+        private final Configuration mConfiguration;
+        private final int[] mAttrs;
+        private final int mDefStyleAttr;
+        private final int mDefStyleRes;
+        // The style set on the element itself, then the name and value resource id of each
+        // requested attribute it sets.
+        private final int[] mElementIds;
+        // The literal values of those attributes, null for the ones given as a reference.
+        private final String[] mElementValues;
+
+        Key(Context context, @Nullable AttributeSet set, int[] attrs, int defStyleAttr,
+            int defStyleRes) {
+            final Resources.Theme theme = context.getTheme();
+            mTheme = new WeakReference<>(theme);
+            mThemeIdentity = System.identityHashCode(theme);
+            mConfiguration = context.getResources().getConfiguration();
+            mAttrs = attrs;
+            mDefStyleAttr = defStyleAttr;
+            mDefStyleRes = defStyleRes;
+            if (set == null) {
+                mElementIds = EMPTY_IDS;
+                mElementValues = EMPTY_VALUES;
+                return;
+            }
+            int count = 0;
+            for (int i = 0; i < set.getAttributeCount(); i++) {
+                if (isRequested(set.getAttributeNameResource(i), attrs)) {
+                    count++;
+                }
+            }
+            mElementIds = new int[1 + 2 * count];
+            mElementValues = new String[count];
+            mElementIds[0] = set.getStyleAttribute();
+            int index = 0;
+            for (int i = 0; i < set.getAttributeCount() && index < count; i++) {
+                final int name = set.getAttributeNameResource(i);
+                if (!isRequested(name, attrs)) {
+                    continue;
+                }
+                final int value = set.getAttributeResourceValue(i, 0);
+                mElementIds[1 + 2 * index] = name;
+                mElementIds[2 + 2 * index] = value;
+                mElementValues[index] = value == 0 ? set.getAttributeValue(i) : null;
+                index++;
+            }
+        }
+
+        private Key(Key key, Configuration configuration) {
+            mTheme = key.mTheme;
+            mThemeIdentity = key.mThemeIdentity;
+            mConfiguration = configuration;
+            mAttrs = key.mAttrs;
+            mDefStyleAttr = key.mDefStyleAttr;
+            mDefStyleRes = key.mDefStyleRes;
+            mElementIds = key.mElementIds;
+            mElementValues = key.mElementValues;
+        }
+
+        /**
+         * @return This key with a copy of the configuration, which the resources update in
+         * place.
+         */
+        Key copy() {
+            return new Key(this, new Configuration(mConfiguration));
+        }
+
+        private static boolean isRequested(int name, int[] attrs) {
+            for (int attr : attrs) {
+                if (attr == name) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (mAttrs != other.mAttrs
+                    || mDefStyleAttr != other.mDefStyleAttr
+                    || mDefStyleRes != other.mDefStyleRes
+                    || mThemeIdentity != other.mThemeIdentity
+                    || !Arrays.equals(mElementIds, other.mElementIds)
+                    || !Arrays.equals(mElementValues, other.mElementValues)
+                    || !mConfiguration.equals(other.mConfiguration)) {
+                return false;
+            }
+            final Resources.Theme theme = mTheme.get();
+            return theme != null && theme == other.mTheme.get();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mAttrs);
+            result = 31 * result + mDefStyleAttr;
+            result = 31 * result + mDefStyleRes;
+            result = 31 * result + mConfiguration.hashCode();
+            result = 31 * result + mThemeIdentity;
+            result = 31 * result + Arrays.hashCode(mElementIds);
+            result = 31 * result + Arrays.hashCode(mElementValues);
+            return result;
+        }
+    }
+}
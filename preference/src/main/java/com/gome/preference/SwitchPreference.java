@@ -17,7 +17,6 @@
 package com.gome.preference;
 
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.support.annotation.StringRes;
 import android.util.AttributeSet;
 import android.view.View;
@@ -37,19 +36,32 @@ import android.widget.Switch;
  * @attr ref android.R.styleable#SwitchPreference_disableDependentsState
  */
 public class SwitchPreference extends TwoStatePreference {
+    private static final int[] ATTRS = {
+            android.R.attr.summaryOn, android.R.attr.summaryOff, android.R.attr.disableDependentsState
+    };
     private final Listener mListener = new Listener();
 
     // Switch text for on and off states
     private CharSequence mSwitchOn;
     private CharSequence mSwitchOff;
 
-    private class Listener implements CompoundButton.OnCheckedChangeListener {
+    private class Listener implements CompoundButton.OnCheckedChangeListener,
+            GomeSwitch.OnCheckedChangeListener {
         @Override
         public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            onCheckedChanged((Checkable) buttonView, isChecked);
+        }
+
+        @Override
+        public void onCheckedChanged(GomeSwitch switchView, boolean isChecked) {
+            onCheckedChanged((Checkable) switchView, isChecked);
+        }
+
+        private void onCheckedChanged(Checkable checkable, boolean isChecked) {
             if (!callChangeListener(isChecked)) {
                 // Listener didn't like it, change it back.
-                // CompoundButton will make sure we don't recurse.
-                buttonView.setChecked(!isChecked);
+                // The switch will make sure we don't recurse.
+                checkable.setChecked(!isChecked);
                 return;
             }
 
@@ -123,17 +135,17 @@ public class SwitchPreference extends TwoStatePreference {
     }
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
-        TypedArray typedArray = context.obtainStyledAttributes(attrs, new int[]{
-                android.R.attr.summaryOn, android.R.attr.summaryOff, android.R.attr.disableDependentsState
-        }, defStyleAttr, defStyleRes);
-
-        setSummaryOn(typedArray.getString(0));
-        setSummaryOff(typedArray.getString(1));
-        setDisableDependentsState(typedArray.getBoolean(2, false));
+        StyledAttributeCache.Values values = StyledAttributeCache.obtain(context, attrs, ATTRS,
+                defStyleAttr, defStyleRes);
 
-        typedArray.recycle();
+        setSummaryOn(values.getString(0));
+        setSummaryOff(values.getString(1));
+        setDisableDependentsState(values.getBoolean(2, false));
 
         setWidgetLayoutResource(R.layout.preference_widget_switch);
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.INIT, getKey(), getWidgetLayoutResource());
+        }
     }
 
     @Override
@@ -141,25 +153,62 @@ public class SwitchPreference extends TwoStatePreference {
         super.onBindView(view);
 
 //        View checkableView = view.findViewById(com.android.internal.R.id.switch_widget);
-        View checkableView = view.findViewById(R.id.custom_switch_widget);
-        if (checkableView != null && checkableView instanceof Checkable) {
-            //TODO 这里到时要使用GomeSwitch
+        View checkableView = PreferenceRowHolder.get(view).getWidget(R.id.custom_switch_widget);
+        if (checkableView instanceof GomeSwitch) {
+            final GomeSwitch switchView = (GomeSwitch) checkableView;
+            switchView.setOnCheckedChangeListener(null);
+            switchView.setChecked(isChecked());
+            if (PreferenceTrace.ENABLED) {
+                PreferenceTrace.trace(PreferenceTrace.SYNC_SWITCH, getKey(), isChecked() ? 1 : 0);
+            }
+            switchView.setTextOn(mSwitchOn);
+            switchView.setTextOff(mSwitchOff);
+            switchView.setOnCheckedChangeListener(mListener);
+        } else if (checkableView instanceof Checkable) {
+            // A platform switch from a custom widget layout.
             if (checkableView instanceof Switch) {
                 final Switch switchView = (Switch) checkableView;
                 switchView.setOnCheckedChangeListener(null);
             }
 
-            ((Checkable) checkableView).setChecked(mChecked);
+            ((Checkable) checkableView).setChecked(isChecked());
+            if (PreferenceTrace.ENABLED) {
+                PreferenceTrace.trace(PreferenceTrace.SYNC_SWITCH, getKey(), isChecked() ? 1 : 0);
+            }
 
             if (checkableView instanceof Switch) {
                 final Switch switchView = (Switch) checkableView;
-                switchView.setTextOn(mSwitchOn);
-                switchView.setTextOff(mSwitchOff);
+                // Both setters request a layout even for the same text.
+                if (switchView.getTextOn() != mSwitchOn) {
+                    switchView.setTextOn(mSwitchOn);
+                }
+                if (switchView.getTextOff() != mSwitchOff) {
+                    switchView.setTextOff(mSwitchOff);
+                }
                 switchView.setOnCheckedChangeListener(mListener);
             }
         }
+        // The summary for the checked state is bound by CustomPreference.onBindView.
+    }
 
-        syncSummaryView(view);
+    /**
+     * Toggles a {@link GomeSwitch} in place, which animates without requesting a layout.
+     */
+    @Override
+    boolean syncWidgetInPlace(View row) {
+        final View checkableView = PreferenceRowHolder.get(row).getWidget(
+                R.id.custom_switch_widget);
+        if (!(checkableView instanceof GomeSwitch)) {
+            return false;
+        }
+        final GomeSwitch switchView = (GomeSwitch) checkableView;
+        switchView.setOnCheckedChangeListener(null);
+        switchView.setChecked(isChecked());
+        switchView.setOnCheckedChangeListener(mListener);
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.SYNC_SWITCH, getKey(), isChecked() ? 1 : 0);
+        }
+        return true;
     }
 
     /**
@@ -0,0 +1,62 @@
+package com.gome.preference;
+
+import android.preference.Preference;
+import android.preference.PreferenceGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies many checked states to a hierarchy at once, for example when restoring a profile or
+ * applying a policy.
+ * <p>
+ * Calling {@link TwoStatePreference#setChecked(boolean)} in a loop persists, propagates the
+ * dependencies and refreshes the list once per preference. {@link #apply} runs all of them in
+ * one {@link PreferenceWriteBuffer} transaction, so the values are written with one edit per
+ * preferences file, and in one {@link DependencyIndex} batch, so the dependency changes of all
+ * of them end in a single adapter refresh.
+ * <p>
+ * Like {@code setChecked}, this does not call the change listeners. Main thread only.
+ */
+public final class TwoStateBatch {
+
+    private TwoStateBatch() {
+    }
+
+    /**
+     * Sets the checked state of every {@link TwoStatePreference} under {@code group} whose key
+     * is in {@code values}. Keys without such a preference are ignored.
+     *
+     * @return The number of preferences whose state was set.
+     */
+    public static int apply(PreferenceGroup group, Map<String, Boolean> values) {
+        final ArrayList<TwoStatePreference> preferences = new ArrayList<>();
+        collect(group, values, preferences);
+        PreferenceWriteBuffer.beginTransaction();
+        DependencyIndex.beginBatch();
+        try {
+            for (int i = 0; i < preferences.size(); i++) {
+                final TwoStatePreference preference = preferences.get(i);
+                preference.setChecked(values.get(preference.getKey()));
+            }
+        } finally {
+            DependencyIndex.endBatch();
+            PreferenceWriteBuffer.endTransaction();
+        }
+        return preferences.size();
+    }
+
+    private static void collect(PreferenceGroup group, Map<String, Boolean> values,
+                                List<TwoStatePreference> preferences) {
+        for (int i = 0; i < group.getPreferenceCount(); i++) {
+            final Preference preference = group.getPreference(i);
+            if (preference instanceof TwoStatePreference
+                    && values.get(preference.getKey()) != null) {
+                preferences.add((TwoStatePreference) preference);
+            } else if (preference instanceof PreferenceGroup) {
+                collect((PreferenceGroup) preference, values, preferences);
+            }
+        }
+    }
+}
@@ -21,11 +21,11 @@ import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.preference.PreferenceManager;
 import android.support.annotation.StringRes;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
-import android.widget.TextView;
 
 /**
  * Common base class for preferences that have two selectable states, persist a
@@ -36,9 +36,19 @@ public abstract class TwoStatePreference extends CustomPreference {
 
     private CharSequence mSummaryOn;
     private CharSequence mSummaryOff;
-    boolean mChecked;
-    private boolean mCheckedSet;
-    private boolean mDisableDependentsState;
+
+    private static final int FLAG_CHECKED = 1;
+    private static final int FLAG_CHECKED_SET = 1 << 1;
+    private static final int FLAG_DISABLE_DEPENDENTS_STATE = 1 << 2;
+
+    // The FLAG_* bits, or the index in mStateTable while bound to one.
+    private int mState;
+    private TwoStateTable mStateTable;
+
+    // Set while the superclass attaches, which leaves the initial value to this class.
+    private boolean mAttaching;
+    // The default value the superclass offered while attaching, if any.
+    private Object mAttachingDefaultValue;
 
     public TwoStatePreference(
             Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
@@ -73,16 +83,36 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @param checked The checked state.
      */
     public void setChecked(boolean checked) {
-        // Always persist/notify the first time; don't assume the field's default of false.
-        final boolean changed = mChecked != checked;
-        if (changed || !mCheckedSet) {
-            mChecked = checked;
-            mCheckedSet = true;
-            persistBoolean(checked);
-            if (changed) {
-                notifyDependencyChange(shouldDisableDependents());
-                notifyChanged();
+        final long start = PreferenceMetrics.start();
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.SET_CHECKED, getKey(), checked ? 1 : 0);
+        }
+        try {
+            // Always persist/notify the first time; don't assume the field's default of false.
+            final boolean changed = isChecked() != checked;
+            final boolean checkedSet = isCheckedSet();
+            if (changed || !checkedSet) {
+                if (mStateTable != null) {
+                    mStateTable.setChecked(mState, checked);
+                    mStateTable.setCheckedSet(mState, true);
+                } else {
+                    setFlag(FLAG_CHECKED, checked);
+                    setFlag(FLAG_CHECKED_SET, true);
+                    persistBoolean(checked);
+                }
+                if (changed) {
+                    notifyDependencyChange(shouldDisableDependents());
+                    if (!syncCheckedInPlace()) {
+                        notifyChanged();
+                    }
+                    // Setting the initial value is no change to the persisted state.
+                    if (checkedSet) {
+                        PreferenceChangeStream.post(getKey(), checked);
+                    }
+                }
             }
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.SET_CHECKED, start);
         }
     }
 
@@ -92,12 +122,147 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @return The checked state.
      */
     public boolean isChecked() {
-        return mChecked;
+        return mStateTable != null ? mStateTable.isChecked(mState) : hasFlag(FLAG_CHECKED);
+    }
+
+    private boolean isCheckedSet() {
+        return mStateTable != null ? mStateTable.isCheckedSet(mState)
+                : hasFlag(FLAG_CHECKED_SET);
+    }
+
+    private boolean hasFlag(int flag) {
+        return (mState & flag) != 0;
+    }
+
+    private void setFlag(int flag, boolean value) {
+        mState = value ? mState | flag : mState & ~flag;
+    }
+
+    /**
+     * Binds this preference to a screen level {@link TwoStateTable}. From then on its state
+     * is kept in, and persisted with, the table instead of under its own key. If the table has
+     * no value for the key yet, the current state of this preference is carried over.
+     * <p>
+     * A persistent preference with a key is bound to the
+     * {@link TwoStateTable#getDefault() default table} when it is attached to a hierarchy.
+     *
+     * @param stateTable The table, or {@code null} to keep the state in this preference again.
+     */
+    public void setStateTable(TwoStateTable stateTable) {
+        if (stateTable == mStateTable) {
+            return;
+        }
+        final boolean checked = isChecked();
+        final boolean checkedSet = isCheckedSet();
+        final boolean disableDependentsState = getDisableDependentsState();
+        if (stateTable == null) {
+            mStateTable = null;
+            mState = 0;
+            setFlag(FLAG_CHECKED, checked);
+            setFlag(FLAG_CHECKED_SET, checkedSet);
+            setFlag(FLAG_DISABLE_DEPENDENTS_STATE, disableDependentsState);
+            return;
+        }
+        if (!hasKey()) {
+            throw new IllegalStateException("Preference does not have a key assigned.");
+        }
+        final int index = stateTable.indexOf(getKey());
+        if (checkedSet && !stateTable.hasValue(index)) {
+            stateTable.setChecked(index, checked);
+        }
+        stateTable.setCheckedSet(index, checkedSet);
+        stateTable.setDisableDependentsState(index, disableDependentsState);
+        mStateTable = stateTable;
+        mState = index;
+    }
+
+    /**
+     * @return The table this preference is bound to, if any.
+     */
+    public TwoStateTable getStateTable() {
+        return mStateTable;
+    }
+
+    @Override
+    protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+        // Before the initial value is set, which reads the table.
+        final TwoStateTable stateTable = TwoStateTable.getDefault();
+        if (stateTable != null && mStateTable == null && hasKey() && isPersistent()) {
+            setStateTable(stateTable);
+        }
+        // The superclass only asks the SharedPreferences whether there is a value, which
+        // misses the data store and the write buffer.
+        mAttaching = true;
+        try {
+            super.onAttachedToHierarchy(preferenceManager);
+        } finally {
+            mAttaching = false;
+        }
+        final Object defaultValue = mAttachingDefaultValue;
+        mAttachingDefaultValue = null;
+        dispatchSetInitialValue(defaultValue);
+    }
+
+    /**
+     * Restores the persisted state if there is one, wherever it is kept, and sets
+     * {@code defaultValue} otherwise.
+     */
+    private void dispatchSetInitialValue(Object defaultValue) {
+        if (shouldPersist() && hasPersistedBoolean()) {
+            onSetInitialValue(true, null);
+        } else if (defaultValue != null) {
+            onSetInitialValue(false, defaultValue);
+        }
+    }
+
+    private boolean hasPersistedBoolean() {
+        if (mStateTable != null && mStateTable.hasValue(mState)) {
+            return true;
+        }
+        final Boolean contains = PersistedBooleans.contains(getPreferenceDataStore(),
+                getSharedPreferences(), getKey());
+        if (contains != null) {
+            return contains;
+        }
+        // The first read of a cold open, which waits for the SharedPreferences to load.
+        final long ioStart = MainThreadIoDetector.begin();
+        try {
+            return getSharedPreferences().contains(getKey());
+        } finally {
+            MainThreadIoDetector.end(MainThreadIoDetector.READ, getKey(), ioStart);
+        }
+    }
+
+    /**
+     * Reports no persistence while the superclass attaches, so it does not decide the initial
+     * value, see {@link #dispatchSetInitialValue(Object)}.
+     */
+    @Override
+    protected boolean shouldPersist() {
+        return !mAttaching && super.shouldPersist();
+    }
+
+    /**
+     * Moves the state to the index of the new key when bound to a {@link TwoStateTable}.
+     */
+    @Override
+    public void setKey(String key) {
+        final TwoStateTable stateTable = mStateTable;
+        if (stateTable == null || TextUtils.equals(key, getKey())) {
+            super.setKey(key);
+            return;
+        }
+        setStateTable(null);
+        super.setKey(key);
+        if (hasKey()) {
+            setStateTable(stateTable);
+        }
     }
 
     @Override
     public boolean shouldDisableDependents() {
-        boolean shouldDisable = mDisableDependentsState ? mChecked : !mChecked;
+        final boolean checked = isChecked();
+        boolean shouldDisable = getDisableDependentsState() ? checked : !checked;
         return shouldDisable || super.shouldDisableDependents();
     }
 
@@ -167,7 +332,10 @@ public abstract class TwoStatePreference extends CustomPreference {
      * or when this preference is off ({@code false}).
      */
     public boolean getDisableDependentsState() {
-        return mDisableDependentsState;
+        if (mStateTable != null) {
+            return mStateTable.getDisableDependentsState(mState);
+        }
+        return hasFlag(FLAG_DISABLE_DEPENDENTS_STATE);
     }
 
     /**
@@ -177,7 +345,57 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @param disableDependentsState The preference state that should disable dependents.
      */
     public void setDisableDependentsState(boolean disableDependentsState) {
-        mDisableDependentsState = disableDependentsState;
+        if (mStateTable != null) {
+            mStateTable.setDisableDependentsState(mState, disableDependentsState);
+        } else {
+            setFlag(FLAG_DISABLE_DEPENDENTS_STATE, disableDependentsState);
+        }
+    }
+
+    /**
+     * Persists through {@link PersistedBooleans}, so with a buffering
+     * {@link PreferenceWriteBuffer} quick successive toggles end up in a single
+     * SharedPreferences edit.
+     */
+    @Override
+    protected boolean persistBoolean(boolean value) {
+        final long start = PreferenceMetrics.start();
+        try {
+            if (!shouldPersist()) {
+                return super.persistBoolean(value);
+            }
+            if (PersistedBooleans.persist(getPreferenceDataStore(), getSharedPreferences(),
+                    getKey(), value)) {
+                return true;
+            }
+            final long ioStart = MainThreadIoDetector.begin();
+            try {
+                return super.persistBoolean(value);
+            } finally {
+                MainThreadIoDetector.end(MainThreadIoDetector.WRITE, getKey(), ioStart);
+            }
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.PERSIST_BOOLEAN, start);
+        }
+    }
+
+    @Override
+    protected boolean getPersistedBoolean(boolean defaultReturnValue) {
+        if (!shouldPersist()) {
+            return super.getPersistedBoolean(defaultReturnValue);
+        }
+        final Boolean persisted = PersistedBooleans.getPersisted(getPreferenceDataStore(),
+                getSharedPreferences(), getKey(), defaultReturnValue);
+        if (persisted != null) {
+            return persisted;
+        }
+        // Only the SharedPreferences can still be loading from the disk.
+        final long ioStart = MainThreadIoDetector.begin();
+        try {
+            return super.getPersistedBoolean(defaultReturnValue);
+        } finally {
+            MainThreadIoDetector.end(MainThreadIoDetector.READ, getKey(), ioStart);
+        }
     }
 
     @Override
@@ -187,45 +405,68 @@ public abstract class TwoStatePreference extends CustomPreference {
 
     @Override
     protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
-        setChecked(restoreValue ? getPersistedBoolean(mChecked)
+        if (mAttaching) {
+            mAttachingDefaultValue = defaultValue;
+            return;
+        }
+        if (mStateTable != null && mStateTable.hasValue(mState)) {
+            setChecked(mStateTable.isChecked(mState));
+            return;
+        }
+        setChecked(restoreValue ? getPersistedBoolean(isChecked())
                 : (Boolean) defaultValue);
     }
 
+    /**
+     * @return The summary for the current checked state, falling back to the summary.
+     */
+    @Override
+    CharSequence getBoundSummary() {
+        final boolean checked = isChecked();
+        if (checked && !TextUtils.isEmpty(mSummaryOn)) {
+            return mSummaryOn;
+        } else if (!checked && !TextUtils.isEmpty(mSummaryOff)) {
+            return mSummaryOff;
+        }
+        return getSummary();
+    }
+
+    /**
+     * Applies a checked state change to the row this preference is bound to without the
+     * adapter, when the summary stays the same and only the widget has to change. That skips
+     * rebinding the visible rows and the layout pass that follows.
+     *
+     * @return Whether the row was updated, otherwise it has to be rebound.
+     */
+    boolean syncCheckedInPlace() {
+        final View row = getBoundRow();
+        if (row == null || !PreferenceRowHolder.get(row).isSummaryBound(getBoundSummary())) {
+            return false;
+        }
+        return syncWidgetInPlace(row);
+    }
+
+    /**
+     * Updates the widget of {@code row} to the checked state, without requesting a layout.
+     *
+     * @return Whether the widget could be updated that way. The default has no widget to
+     * update.
+     */
+    boolean syncWidgetInPlace(View row) {
+        return false;
+    }
+
     /**
      * Sync a summary view contained within view's subhierarchy with the correct summary text.
+     * {@link #onBindView(View)} already does this; the view is only touched if the summary
+     * changed since.
      *
      * @param view View where a summary should be located
      */
     void syncSummaryView(View view) {
-        // Sync the summary view
-        TextView summaryView = (TextView) view.findViewById(android.R.id.summary);
-        if (summaryView != null) {
-            boolean useDefaultSummary = true;
-            if (mChecked && !TextUtils.isEmpty(mSummaryOn)) {
-                summaryView.setText(mSummaryOn);
-                useDefaultSummary = false;
-            } else if (!mChecked && !TextUtils.isEmpty(mSummaryOff)) {
-                summaryView.setText(mSummaryOff);
-                useDefaultSummary = false;
-            }
-
-            if (useDefaultSummary) {
-                final CharSequence summary = getSummary();
-                if (!TextUtils.isEmpty(summary)) {
-                    summaryView.setText(summary);
-                    useDefaultSummary = false;
-                }
-            }
-
-            int newVisibility = View.GONE;
-            if (!useDefaultSummary) {
-                // Someone has written to it
-                newVisibility = View.VISIBLE;
-            }
-            if (newVisibility != summaryView.getVisibility()) {
-                summaryView.setVisibility(newVisibility);
-            }
-        }
+        final long start = PreferenceMetrics.start();
+        PreferenceRowHolder.get(view).bindSummary(getBoundSummary());
+        PreferenceMetrics.stop(PreferenceMetrics.SYNC_SUMMARY_VIEW, start);
     }
 
     @Override
@@ -0,0 +1,271 @@
+package com.gome.preference;
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.Base64;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Screen level state of many two-state preferences, packed into bitsets.
+ * <p>
+ * A {@link TwoStatePreference} (framework or {@code support}) that is bound to a table keeps
+ * its checked, checked-set and disable-dependents-state flags as bits at its index in the
+ * table rather than in its own fields, and no longer persists a boolean per key. The whole
+ * table is persisted instead as one packed blob under {@code name}, next to the list of keys
+ * under {@code name + "_keys"}, which is only rewritten when keys are added. Writes go
+ * through {@link PreferenceWriteBuffer#schedule}, so any number of toggles in a frame produce
+ * a single write, in every mode of the buffer.
+ * <p>
+ * Preferences attached to a hierarchy while a table is set with
+ * {@link #setDefault(TwoStateTable)} are bound to it, which is the way to use it for
+ * hierarchies inflated from XML:
+ * <pre>
+ * TwoStateTable.setDefault(table);
+ * addPreferencesFromResource(R.xml.app_permissions);
+ * TwoStateTable.setDefault(null);
+ * </pre>
+ * Preferences created in code are bound with {@code setStateTable} once they have a key.
+ * A table is meant to be used from the main thread only.
+ */
+public final class TwoStateTable implements PreferenceWriteBuffer.PendingWrite {
+
+    private static final String KEYS_SUFFIX = "_keys";
+    private static final char KEY_SEPARATOR = '\n';
+    private static final byte BLOB_VERSION = 1;
+
+    private static TwoStateTable sDefault;
+
+    // Exactly one of the two is set.
+    private final SharedPreferences mSharedPreferences;
+    private final PreferenceDataStore mDataStore;
+    private final String mName;
+
+    private final HashMap<String, Integer> mIndices = new HashMap<>();
+    private final ArrayList<String> mKeys = new ArrayList<>();
+
+    // One bit per index.
+    private long[] mChecked = new long[1];
+    private long[] mHasValue = new long[1];
+    private long[] mCheckedSet = new long[1];
+    private long[] mDisableDependentsState = new long[1];
+
+    private boolean mKeysDirty;
+
+    /**
+     * Creates a table persisted in {@code sharedPreferences} under {@code name}.
+     */
+    public TwoStateTable(SharedPreferences sharedPreferences, String name) {
+        this(sharedPreferences, null, name);
+    }
+
+    /**
+     * Creates a table persisted in {@code dataStore} under {@code name}.
+     */
+    public TwoStateTable(PreferenceDataStore dataStore, String name) {
+        this(null, dataStore, name);
+    }
+
+    private TwoStateTable(SharedPreferences sharedPreferences, PreferenceDataStore dataStore,
+                          String name) {
+        mSharedPreferences = sharedPreferences;
+        mDataStore = dataStore;
+        mName = name;
+        final long ioStart = MainThreadIoDetector.begin();
+        load();
+        MainThreadIoDetector.end(MainThreadIoDetector.READ, name, ioStart);
+    }
+
+    /**
+     * Sets the table that preferences constructed from now on are bound to.
+     *
+     * @param table The table, or {@code null} to stop binding new preferences.
+     */
+    public static void setDefault(@Nullable TwoStateTable table) {
+        sDefault = table;
+    }
+
+    /**
+     * @return The table set with {@link #setDefault(TwoStateTable)}, if any.
+     */
+    @Nullable
+    public static TwoStateTable getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @return The number of keys in this table.
+     */
+    public int size() {
+        return mKeys.size();
+    }
+
+    /**
+     * Returns the index of {@code key}, adding it to the table if needed.
+     */
+    public int indexOf(String key) {
+        Integer index = mIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int newIndex = mKeys.size();
+        mKeys.add(key);
+        mIndices.put(key, newIndex);
+        int words = newIndex / 64 + 1;
+        if (words > mChecked.length) {
+            int capacity = Math.max(words, mChecked.length * 2);
+            mChecked = grow(mChecked, capacity);
+            mHasValue = grow(mHasValue, capacity);
+            mCheckedSet = grow(mCheckedSet, capacity);
+            mDisableDependentsState = grow(mDisableDependentsState, capacity);
+        }
+        mKeysDirty = true;
+        return newIndex;
+    }
+
+    /**
+     * @return The key at {@code index}.
+     */
+    public String keyAt(int index) {
+        return mKeys.get(index);
+    }
+
+    public boolean isChecked(int index) {
+        return get(mChecked, index);
+    }
+
+    /**
+     * Sets the checked state at {@code index} and schedules a write if it changed or was
+     * never persisted.
+     */
+    public void setChecked(int index, boolean checked) {
+        if (get(mHasValue, index) && get(mChecked, index) == checked) {
+            return;
+        }
+        set(mChecked, index, checked);
+        set(mHasValue, index, true);
+        PreferenceWriteBuffer.schedule(this);
+    }
+
+    /**
+     * @return Whether a checked state was ever persisted for {@code index}.
+     */
+    public boolean hasValue(int index) {
+        return get(mHasValue, index);
+    }
+
+    /**
+     * @return Whether the preference at {@code index} had its checked state set since the
+     * table was loaded. Not persisted.
+     */
+    public boolean isCheckedSet(int index) {
+        return get(mCheckedSet, index);
+    }
+
+    public void setCheckedSet(int index, boolean checkedSet) {
+        set(mCheckedSet, index, checkedSet);
+    }
+
+    /**
+     * Not persisted, it comes from the preference attributes.
+     */
+    public boolean getDisableDependentsState(int index) {
+        return get(mDisableDependentsState, index);
+    }
+
+    public void setDisableDependentsState(int index, boolean disableDependentsState) {
+        set(mDisableDependentsState, index, disableDependentsState);
+    }
+
+    /**
+     * Persists the table. Called through {@link PreferenceWriteBuffer}.
+     */
+    @Override
+    public void write() {
+        final String keys = mKeysDirty
+                ? TextUtils.join(String.valueOf(KEY_SEPARATOR), mKeys) : null;
+        mKeysDirty = false;
+        int words = (mKeys.size() + 63) / 64;
+        ByteBuffer blob = ByteBuffer.allocate(1 + 4 + words * 16);
+        blob.put(BLOB_VERSION);
+        blob.putInt(mKeys.size());
+        for (int i = 0; i < words; i++) {
+            blob.putLong(mChecked[i]);
+        }
+        for (int i = 0; i < words; i++) {
+            blob.putLong(mHasValue[i]);
+        }
+        final String encoded = Base64.encodeToString(blob.array(), Base64.NO_WRAP);
+        if (mSharedPreferences != null) {
+            // The keys and the blob in one edit.
+            final SharedPreferences.Editor editor = mSharedPreferences.edit();
+            if (keys != null) {
+                editor.putString(mName + KEYS_SUFFIX, keys);
+            }
+            editor.putString(mName, encoded).apply();
+        } else {
+            if (keys != null) {
+                mDataStore.putString(mName + KEYS_SUFFIX, keys);
+            }
+            mDataStore.putString(mName, encoded);
+        }
+    }
+
+    private String getString(String key) {
+        return mSharedPreferences != null ? mSharedPreferences.getString(key, null)
+                : mDataStore.getString(key, null);
+    }
+
+    private void load() {
+        String keys = getString(mName + KEYS_SUFFIX);
+        if (TextUtils.isEmpty(keys)) {
+            return;
+        }
+        for (String key : TextUtils.split(keys, String.valueOf(KEY_SEPARATOR))) {
+            indexOf(key);
+        }
+        mKeysDirty = false;
+
+        String encoded = getString(mName);
+        if (encoded == null) {
+            return;
+        }
+        ByteBuffer blob = ByteBuffer.wrap(Base64.decode(encoded, Base64.NO_WRAP));
+        if (blob.remaining() < 5 || blob.get() != BLOB_VERSION) {
+            return;
+        }
+        // The keys are written first; a key without bits just has no value yet.
+        int count = blob.getInt();
+        int words = (count + 63) / 64;
+        if (count > mKeys.size() || blob.remaining() < words * 16) {
+            return;
+        }
+        for (int i = 0; i < words; i++) {
+            mChecked[i] = blob.getLong();
+        }
+        for (int i = 0; i < words; i++) {
+            mHasValue[i] = blob.getLong();
+        }
+    }
+
+    private static long[] grow(long[] bits, int words) {
+        long[] grown = new long[words];
+        System.arraycopy(bits, 0, grown, 0, bits.length);
+        return grown;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index >> 6] |= 1L << index;
+        } else {
+            bits[index >> 6] &= ~(1L << index);
+        }
+    }
+}
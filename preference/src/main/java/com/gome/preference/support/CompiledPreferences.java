@@ -0,0 +1,122 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.annotation.XmlRes;
+import android.support.v14.preference.PreferenceFragment;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceFragmentCompat;
+import android.support.v7.preference.PreferenceGroup;
+import android.support.v7.preference.PreferenceInternals;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import java.util.ArrayList;
+
+/**
+ * Loads {@code support} preference hierarchies compiled from XML by
+ * {@code preference-compiler.gradle}, see {@link com.gome.preference.CompiledPreferences}.
+ */
+public final class CompiledPreferences {
+
+    /**
+     * Builds a compiled hierarchy. Implemented by the generated classes.
+     */
+    public interface Builder {
+        /**
+         * Adds the preferences of the compiled file to {@code root}.
+         */
+        void build(Context context, PreferenceGroup root, Dependencies dependencies);
+    }
+
+    /**
+     * The dependencies of a compiled hierarchy. They can only be set once the hierarchy is
+     * attached to its screen, so the builder collects them here.
+     */
+    public static final class Dependencies {
+
+        private final ArrayList<Preference> mDependents = new ArrayList<>();
+        private final ArrayList<String> mKeys = new ArrayList<>();
+
+        public void add(Preference dependent, String dependencyKey) {
+            mDependents.add(dependent);
+            mKeys.add(dependencyKey);
+        }
+
+        /**
+         * Sets the collected dependencies. A dependent may already have registered with its
+         * dependency when it was attached, registering it again does not change anything.
+         */
+        void apply() {
+            for (int i = 0; i < mDependents.size(); i++) {
+                mDependents.get(i).setDependency(mKeys.get(i));
+            }
+        }
+    }
+
+    private CompiledPreferences() {
+    }
+
+    /**
+     * Returns the builder compiled from {@code xmlResId}.
+     *
+     * @return The builder, or {@code null} if the file was not compiled.
+     */
+    @Nullable
+    public static Builder getBuilder(Context context, @XmlRes int xmlResId) {
+        return com.gome.preference.CompiledPreferences.findBuilder(context, xmlResId,
+                Builder.class);
+    }
+
+    /**
+     * Like {@link PreferenceFragmentCompat#addPreferencesFromResource(int)}, but builds the
+     * compiled hierarchy if there is one.
+     */
+    public static void addPreferencesFromResource(PreferenceFragmentCompat fragment,
+                                                  @XmlRes int xmlResId) {
+        final PreferenceManager manager = fragment.getPreferenceManager();
+        final Builder builder = getBuilder(manager.getContext(), xmlResId);
+        if (builder == null) {
+            fragment.addPreferencesFromResource(xmlResId);
+            return;
+        }
+        final Dependencies dependencies = new Dependencies();
+        fragment.setPreferenceScreen(build(builder, manager, fragment.getPreferenceScreen(),
+                dependencies));
+        dependencies.apply();
+    }
+
+    /**
+     * Like {@link PreferenceFragment#addPreferencesFromResource(int)}, but builds the
+     * compiled hierarchy if there is one.
+     */
+    public static void addPreferencesFromResource(PreferenceFragment fragment,
+                                                  @XmlRes int xmlResId) {
+        final PreferenceManager manager = fragment.getPreferenceManager();
+        final Builder builder = getBuilder(manager.getContext(), xmlResId);
+        if (builder == null) {
+            fragment.addPreferencesFromResource(xmlResId);
+            return;
+        }
+        final Dependencies dependencies = new Dependencies();
+        fragment.setPreferenceScreen(build(builder, manager, fragment.getPreferenceScreen(),
+                dependencies));
+        dependencies.apply();
+    }
+
+    private static PreferenceScreen build(Builder builder, PreferenceManager manager,
+                                          @Nullable PreferenceScreen screen,
+                                          Dependencies dependencies) {
+        if (screen == null) {
+            screen = manager.createPreferenceScreen(manager.getContext());
+        }
+        // The default values are written in one commit, as when inflating the XML.
+        PreferenceInternals.setNoCommit(manager, true);
+        try {
+            builder.build(manager.getContext(), screen, dependencies);
+        } finally {
+            PreferenceInternals.setNoCommit(manager, false);
+        }
+        return screen;
+    }
+}
@@ -24,15 +24,27 @@ package com.gome.preference.support;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceManager;
 import android.support.v7.preference.PreferenceViewHolder;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.gome.preference.IconCache;
+import com.gome.preference.PreferenceDataStore;
+import com.gome.preference.PreferenceMetrics;
+import com.gome.preference.PreferenceTrace;
 import com.gome.preference.R;
+import com.gome.preference.StyledAttributeCache;
+
+import java.util.List;
 
 import static android.os.Build.VERSION_CODES.LOLLIPOP;
 
@@ -74,14 +86,50 @@ import static android.os.Build.VERSION_CODES.LOLLIPOP;
  */
 public class CustomPreference extends android.support.v7.preference.Preference {
 
+    private static final int[] ATTRS = {android.R.attr.icon};
+
+    // Handed to the superclass only to make it forget its icon, see clearSuperIcon().
+    private static final Drawable PLACEHOLDER_ICON = new ColorDrawable(Color.TRANSPARENT);
+
+    /**
+     * Payload of a change that only affects the checked state of the row, see
+     * {@link #notifyChanged(Object)}.
+     */
+    public static final String PAYLOAD_CHECKED = "checked";
+
+    /**
+     * Payload of a change that only affects the summary of the row, see
+     * {@link #notifyChanged(Object)}.
+     */
+    public static final String PAYLOAD_SUMMARY = "summary";
+
     TextView titleView;
     TextView summaryView;
 
-    View imageFrame;
-
     private int iconResId;
     private Drawable icon;
 
+    private PreferenceDataStore mPreferenceDataStore;
+
+    private OnPartialChangeListener mOnPartialChangeListener;
+
+    // The index of the hierarchy this preference is attached to.
+    private KeyIndex mKeyIndex;
+
+    // The holder of the last bind, see getBoundViewHolder().
+    private PreferenceViewHolder mBoundHolder;
+
+    /**
+     * Interface definition for the adapter showing a preference, to be told about changes that
+     * only affect part of its row.
+     */
+    interface OnPartialChangeListener {
+        /**
+         * @return Whether the change was handled, if not the whole row has to be rebound.
+         */
+        boolean onPreferencePartialChange(CustomPreference preference, Object payload);
+    }
+
     public CustomPreference(Context context) {
         super(context);
         init(context, null, 0, 0);
@@ -104,11 +152,14 @@ public class CustomPreference extends android.support.v7.preference.Preference {
     }
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
-//        TypedArray typedArray =
-//                context.obtainStyledAttributes(attrs, new int[]{android.R.attr.icon}, defStyleAttr,
-//                        defStyleRes);
-//        iconResId = typedArray.getResourceId(0, 0);
-//        typedArray.recycle();
+        StyledAttributeCache.Values values = StyledAttributeCache.obtain(context, attrs, ATTRS,
+                defStyleAttr, defStyleRes);
+        // Resolved from the shared IconCache on the first bind, see getIcon().
+        iconResId = values.getResourceId(0, 0);
+        if (iconResId != 0) {
+            // The Preference read android:icon too, and would decode its own copy on bind.
+            clearSuperIcon();
+        }
 //        setLayoutResource(R.layout.custom_preference);
         setLayoutResource(R.layout.origin_preference);
         setSelectable(false);
@@ -129,20 +180,200 @@ public class CustomPreference extends android.support.v7.preference.Preference {
      */
     @Override
     public void onBindViewHolder(PreferenceViewHolder holder) {
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.BIND, getKey(), 0);
+        }
         super.onBindViewHolder(holder);
+        if (iconResId != 0) {
+            // The Preference does not know of an icon set by id, see setIcon(int).
+            final View iconView = holder.findViewById(android.R.id.icon);
+            if (iconView instanceof ImageView) {
+                ((ImageView) iconView).setImageDrawable(getIcon());
+                iconView.setVisibility(View.VISIBLE);
+            }
+        }
+        holder.itemView.setTag(R.id.bound_preference, this);
+        mBoundHolder = holder;
+    }
+
+    /**
+     * @return The holder this preference was last bound to, or {@code null} if there is none
+     * or it has been bound to another preference since.
+     */
+    PreferenceViewHolder getBoundViewHolder() {
+        if (mBoundHolder == null
+                || mBoundHolder.itemView.getTag(R.id.bound_preference) != this) {
+            return null;
+        }
+        return mBoundHolder;
+    }
+
+    /**
+     * Binds only the parts of the row named by {@code payloads}, the payloads passed to
+     * {@link #notifyChanged(Object)} since the row was last bound. The default implementation
+     * rebinds the whole row.
+     *
+     * @param holder   The ViewHolder of the row, bound to this preference before.
+     * @param payloads The payloads, never empty.
+     */
+    public void onBindViewHolder(PreferenceViewHolder holder, List<Object> payloads) {
+        onBindViewHolder(holder);
+    }
+
+    /**
+     * Should be called when only the part of the row named by {@code payload} has changed,
+     * such as {@link #PAYLOAD_CHECKED} or {@link #PAYLOAD_SUMMARY}. The row is then rebound
+     * through {@link #onBindViewHolder(PreferenceViewHolder, List)} instead of in full, and
+     * keeps its views, so running animations such as a switch thumb are not interrupted.
+     * Unless the preference is shown by a {@link CustomPreferenceGroupAdapter} this is the
+     * same as {@link #notifyChanged()}.
+     *
+     * @param payload What changed.
+     */
+    protected void notifyChanged(Object payload) {
+        if (mOnPartialChangeListener == null
+                || !mOnPartialChangeListener.onPreferencePartialChange(this, payload)) {
+            notifyChanged();
+        }
+    }
+
+    void setOnPartialChangeListener(OnPartialChangeListener listener) {
+        mOnPartialChangeListener = listener;
+    }
+
+    /**
+     * Tells the dependents in one {@link DependencyIndex} batch, so their rows are refreshed
+     * with a single adapter notification.
+     */
+    @Override
+    public void notifyDependencyChange(boolean disableDependents) {
+        final long start = PreferenceMetrics.start();
+        DependencyIndex.beginBatch();
+        try {
+            super.notifyDependencyChange(disableDependents);
+        } finally {
+            DependencyIndex.endBatch();
+            PreferenceMetrics.stop(PreferenceMetrics.PROPAGATE_DEPENDENCY, start);
+        }
+    }
+
+    @Override
+    protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+        super.onAttachedToHierarchy(preferenceManager);
+        removeFromKeyIndex();
+        mKeyIndex = KeyIndex.get(preferenceManager);
+        mKeyIndex.add(this);
+    }
+
+    @Override
+    public void onAttached() {
+        super.onAttached();
+        // Indexed again when a detached screen is shown again.
+        if (mKeyIndex == null && getPreferenceManager() != null) {
+            mKeyIndex = KeyIndex.get(getPreferenceManager());
+            mKeyIndex.add(this);
+        }
     }
 
+    @Override
+    public void onDetached() {
+        super.onDetached();
+        removeFromKeyIndex();
+    }
+
+    @Override
+    public void setKey(String key) {
+        if (mKeyIndex != null) {
+            mKeyIndex.remove(this);
+        }
+        super.setKey(key);
+        if (mKeyIndex != null) {
+            mKeyIndex.add(this);
+        }
+    }
 
+    /**
+     * Looks {@code key} up in the {@link KeyIndex} of the hierarchy first, so registering the
+     * dependency does not walk the hierarchy.
+     */
+    @Override
+    protected Preference findPreferenceInHierarchy(String key) {
+        final CustomPreference preference = mKeyIndex != null ? mKeyIndex.find(key) : null;
+        return preference != null ? preference : super.findPreferenceInHierarchy(key);
+    }
+
+    void removeFromKeyIndex() {
+        if (mKeyIndex != null) {
+            mKeyIndex.remove(this);
+            mKeyIndex = null;
+        }
+    }
+
+
+    /**
+     * Sets a {@link PreferenceDataStore} to be used by this Preference instead of using
+     * {@link SharedPreferences}.
+     * <p>
+     * The data store will remain assigned even if the Preference is moved around the preference
+     * hierarchy. It will also override a data store set with
+     * {@link PreferenceDataStore#setDefault(PreferenceDataStore)}.
+     *
+     * @param dataStore The {@link PreferenceDataStore} to be used by this Preference.
+     */
+    public void setPreferenceDataStore(PreferenceDataStore dataStore) {
+        mPreferenceDataStore = dataStore;
+    }
+
+    /**
+     * Returns {@link PreferenceDataStore} used by this Preference. Returns {@code null} if
+     * {@link SharedPreferences} is used instead.
+     *
+     * @return The {@link PreferenceDataStore} used by this Preference or {@code null} if none.
+     */
+    public PreferenceDataStore getPreferenceDataStore() {
+        if (mPreferenceDataStore != null) {
+            return mPreferenceDataStore;
+        }
+        return PreferenceDataStore.getDefault();
+    }
+
+    /**
+     * Sets the icon from the shared {@link IconCache}. It is only decoded when it is first
+     * needed, usually when the row is bound.
+     */
     @Override
     public void setIcon(int iconResId) {
-        super.setIcon(iconResId);
+        if (iconResId == this.iconResId && icon == null) {
+            return;
+        }
+        clearSuperIcon();
         this.iconResId = iconResId;
+        this.icon = null;
+        notifyChanged();
+    }
+
+    /**
+     * Clears the drawable and the resource id of the icon of the Preference, which only drops
+     * the id while it holds a drawable.
+     */
+    private void clearSuperIcon() {
+        super.setIcon(PLACEHOLDER_ICON);
+        super.setIcon((Drawable) null);
     }
 
     @Override
     public void setIcon(Drawable icon) {
-        super.setIcon(icon);
+        this.iconResId = 0;
         this.icon = icon;
+        super.setIcon(icon);
+    }
+
+    @Override
+    public Drawable getIcon() {
+        if (icon == null && iconResId != 0) {
+            icon = IconCache.getDrawable(getContext(), iconResId);
+        }
+        return icon;
     }
 
     private void setEnabledStateOnViews(View v, boolean enabled) {
@@ -0,0 +1,463 @@
+package com.gome.preference.support;
+
+import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceGroup;
+import android.support.v7.preference.PreferenceGroupAdapter;
+import android.support.v7.preference.PreferenceInternals;
+import android.support.v7.preference.PreferenceViewHolder;
+import android.support.v7.preference.PreferenceViewHolders;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.gome.preference.PreferenceMetrics;
+import com.gome.preference.PreferenceTrace;
+import com.gome.preference.R;
+import com.gome.preference.RowViewFactories;
+import com.gome.preference.RowViewFactory;
+import com.gome.preference.RowViewPool;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PreferenceGroupAdapter} that builds the rows of preferences with a registered
+ * {@link RowViewFactory} in code instead of inflating their layouts, and takes rows built
+ * ahead of time from the default {@link RowViewPool} when it has them.
+ * <p>
+ * Return it from {@code onCreateAdapter} of the preference fragment:
+ * <pre>
+ * protected RecyclerView.Adapter onCreateAdapter(PreferenceScreen preferenceScreen) {
+ *     return new CustomPreferenceGroupAdapter(preferenceScreen);
+ * }
+ * </pre>
+ * It also delivers the payloads of {@link CustomPreference#notifyChanged(Object)}, so those
+ * rows are partially rebound instead of in full, and holds back the row changes of a
+ * {@link DependencyIndex} batch until it ends, then notifies one range covering them.
+ * <p>
+ * Once the hierarchy has a {@link LazyPreferenceCategory} or a {@link VirtualSwitchList}, the
+ * adapter lists the rows itself. It lists the rows of the
+ * category without creating their preferences, each is created when its row is first laid
+ * out, and one row per item of the list, bound straight from its data source.
+ */
+public class CustomPreferenceGroupAdapter extends PreferenceGroupAdapter
+        implements CustomPreference.OnPartialChangeListener,
+        VirtualSwitchList.OnItemChangeListener {
+
+    // Above any view type PreferenceGroupAdapter hands out for its layouts.
+    private static final int ROW_VIEW_TYPE_OFFSET = 1 << 16;
+
+    // The payload of a full row change. Like the preference PreferenceGroupAdapter passes, it
+    // makes RecyclerView rebind the row in its holder instead of cross-fading a new one, and
+    // is the payload of a held back range whose rows changed in different ways.
+    private static final Object PAYLOAD_ROW = new Object();
+
+    private final ArrayList<Object> mRowTypes = new ArrayList<>();
+
+    private final PreferenceGroup mPreferenceGroup;
+    // The shown rows, a Preference or a LazyRow each, if the hierarchy has lazy categories or
+    // virtual lists. A VirtualSwitchList fills one row per item, at the position in mItemStarts.
+    private ArrayList<Object> mRows;
+    private IdentityHashMap<VirtualSwitchList, Integer> mItemStarts;
+    // The position of each Preference in mRows, the rows of a VirtualSwitchList excepted.
+    private IdentityHashMap<Preference, Integer> mPositions;
+    // The range of rows changed in a DependencyIndex batch, NO_POSITION for none, and their
+    // payload, PAYLOAD_ROW if they had different ones.
+    private int mDeferredStart = RecyclerView.NO_POSITION;
+    private int mDeferredEnd;
+    private Object mDeferredPayload;
+    private final Handler mHandler = new Handler();
+    private final Runnable mSyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Once listing the rows, keeps doing so; otherwise only starts when it has to.
+            if (syncRows() || mRows != null) {
+                notifyDataSetChanged();
+            }
+        }
+    };
+
+    public CustomPreferenceGroupAdapter(PreferenceGroup preferenceGroup) {
+        super(preferenceGroup);
+        mPreferenceGroup = preferenceGroup;
+        syncRows();
+    }
+
+    /**
+     * Lists the rows of the hierarchy into {@link #mRows}, if it has lazy categories or
+     * virtual lists or the rows are listed already.
+     *
+     * @return Whether it has lazy categories or virtual lists.
+     */
+    private boolean syncRows() {
+        final ArrayList<Object> rows = new ArrayList<>(mRows != null ? mRows.size() : 16);
+        final IdentityHashMap<VirtualSwitchList, Integer> itemStarts = new IdentityHashMap<>();
+        final boolean lazy = flatten(mPreferenceGroup, rows, itemStarts);
+        if (!lazy && mRows == null) {
+            return false;
+        }
+        final IdentityHashMap<Preference, Integer> positions =
+                new IdentityHashMap<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            final Object row = rows.get(i);
+            if (row instanceof Preference && !(row instanceof VirtualSwitchList)) {
+                positions.put((Preference) row, i);
+            }
+        }
+        mRows = rows;
+        mItemStarts = itemStarts;
+        mPositions = positions;
+        return lazy;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows != null ? mRows.size() : super.getItemCount();
+    }
+
+    @Override
+    public Preference getItem(int position) {
+        if (mRows == null) {
+            return super.getItem(position);
+        }
+        if (position < 0 || position >= mRows.size()) {
+            return null;
+        }
+        final Object row = mRows.get(position);
+        if (!(row instanceof LazyRow)) {
+            return (Preference) row;
+        }
+        final LazyRow lazyRow = (LazyRow) row;
+        final Preference preference = lazyRow.category.materialize(lazyRow.index);
+        PreferenceInternals.setOnPreferenceChangeInternalListener(preference, this);
+        mRows.set(position, preference);
+        mPositions.put(preference, position);
+        return preference;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        final VirtualSwitchList list = getVirtualSwitchList(position);
+        if (list != null) {
+            if (!hasStableIds()) {
+                return RecyclerView.NO_ID;
+            }
+            // Above the ids of the preferences, which count up from 0.
+            return ((list.getId() + 1) << 32) | (position - mItemStarts.get(list));
+        }
+        return super.getItemId(position);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        final Preference preference = getItem(position);
+        final Object rowType = getVirtualSwitchList(position) != null
+                ? RowViewFactories.getRowType(SwitchPreference.class, R.layout.origin_preference,
+                R.layout.preference_widget_switch)
+                : RowViewFactories.getRowType(preference.getClass(),
+                preference.getLayoutResource(), preference.getWidgetLayoutResource());
+        if (rowType == null) {
+            return super.getItemViewType(position);
+        }
+        int index = mRowTypes.indexOf(rowType);
+        if (index < 0) {
+            index = mRowTypes.size();
+            mRowTypes.add(rowType);
+        }
+        return ROW_VIEW_TYPE_OFFSET + index;
+    }
+
+    @Override
+    public PreferenceViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final long start = PreferenceMetrics.start();
+        try {
+            if (viewType >= ROW_VIEW_TYPE_OFFSET) {
+                final Object rowType = mRowTypes.get(viewType - ROW_VIEW_TYPE_OFFSET);
+                View row = RowViewPool.obtain(parent.getContext(), rowType);
+                if (row == null) {
+                    row = RowViewFactories.createRow(parent.getContext(), parent, rowType);
+                }
+                return PreferenceViewHolders.create(row);
+            }
+            return super.onCreateViewHolder(parent, viewType);
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.ON_CREATE_VIEW, start);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(PreferenceViewHolder holder, int position,
+                                 List<Object> payloads) {
+        final long start = PreferenceMetrics.start();
+        try {
+            final VirtualSwitchList list = getVirtualSwitchList(position);
+            if (list != null) {
+                holder.itemView.setTag(R.id.bound_preference, null);
+                bindItem(holder, list, position);
+                return;
+            }
+            final Preference preference = getItem(position);
+            if (preference instanceof CustomPreference) {
+                final CustomPreference customPreference = (CustomPreference) preference;
+                customPreference.setOnPartialChangeListener(this);
+                if (!payloads.isEmpty()) {
+                    PreferenceMetrics.increment(PreferenceMetrics.PARTIAL_BIND);
+                    if (PreferenceTrace.ENABLED) {
+                        PreferenceTrace.trace(PreferenceTrace.BIND_PARTIAL, preference.getKey(),
+                                payloads.size());
+                    }
+                    customPreference.onBindViewHolder(holder, payloads);
+                    return;
+                }
+            }
+            if (!(preference instanceof CustomPreference)) {
+                // The row may have shown a CustomPreference before, which must not update it.
+                holder.itemView.setTag(R.id.bound_preference, null);
+            }
+            super.onBindViewHolder(holder, position, payloads);
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.ON_BIND_VIEW, start);
+        }
+    }
+
+    private void bindItem(final PreferenceViewHolder holder, final VirtualSwitchList list,
+                          int position) {
+        list.bindItem(holder, position - mItemStarts.get(list));
+        // Resolves the item when clicked, the row may have moved since it was bound.
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                final int position = holder.getAdapterPosition();
+                if (getVirtualSwitchList(position) == list) {
+                    list.toggleItem(holder, position - mItemStarts.get(list));
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private VirtualSwitchList getVirtualSwitchList(int position) {
+        if (mRows == null || position < 0 || position >= mRows.size()) {
+            return null;
+        }
+        final Object row = mRows.get(position);
+        return row instanceof VirtualSwitchList ? (VirtualSwitchList) row : null;
+    }
+
+    @Override
+    public void onPreferenceChange(Preference preference) {
+        if (preference instanceof VirtualSwitchList) {
+            final Integer start = mItemStarts != null ? mItemStarts.get(preference) : null;
+            if (start != null) {
+                notifyRowsChanged(start, ((VirtualSwitchList) preference).getItemCount(),
+                        PAYLOAD_ROW);
+                return;
+            }
+        }
+        final int position = getPreferenceAdapterPosition(preference);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyRowsChanged(position, 1, PAYLOAD_ROW);
+        }
+    }
+
+    /**
+     * Notifies a change of the rows from {@code start}, or holds it back until the end of the
+     * running {@link DependencyIndex} batch, which widens the held back range to cover them.
+     */
+    private void notifyRowsChanged(int start, int count, Object payload) {
+        if (count == 0) {
+            return;
+        }
+        if (!DependencyIndex.defer(this)) {
+            notifyItemRangeChanged(start, count, payload);
+            return;
+        }
+        if (mDeferredStart == RecyclerView.NO_POSITION) {
+            mDeferredStart = start;
+            mDeferredEnd = start + count;
+            mDeferredPayload = payload;
+            return;
+        }
+        mDeferredStart = Math.min(mDeferredStart, start);
+        mDeferredEnd = Math.max(mDeferredEnd, start + count);
+        if (mDeferredPayload != payload) {
+            mDeferredPayload = PAYLOAD_ROW;
+        }
+    }
+
+    /**
+     * Notifies the rows changed in the {@link DependencyIndex} batch that ended as one range,
+     * with a single {@code notifyItemRangeChanged}. Rows in between that did not change are
+     * rebound too, which only costs the ones RecyclerView has bound.
+     */
+    void dispatchDeferredChanges() {
+        if (mDeferredStart == RecyclerView.NO_POSITION) {
+            return;
+        }
+        final int start = mDeferredStart;
+        mDeferredStart = RecyclerView.NO_POSITION;
+        notifyItemRangeChanged(start, mDeferredEnd - start, mDeferredPayload);
+    }
+
+    @Override
+    public void onItemChanged(VirtualSwitchList list, int index) {
+        final Integer start = mItemStarts != null ? mItemStarts.get(list) : null;
+        if (start != null) {
+            notifyItemChanged(start + index);
+        }
+    }
+
+    @Override
+    public void onPreferenceHierarchyChange(Preference preference) {
+        if (preference instanceof LazyPreferenceCategory
+                && ((LazyPreferenceCategory) preference).isMaterializing()) {
+            return;
+        }
+        if (mRows == null && !needsRows(preference)) {
+            super.onPreferenceHierarchyChange(preference);
+            return;
+        }
+        mHandler.removeCallbacks(mSyncRunnable);
+        mHandler.post(mSyncRunnable);
+    }
+
+    /**
+     * @return Whether {@code preference} is or has a lazy category or a virtual list, which
+     * only this adapter can list the rows of.
+     */
+    private static boolean needsRows(Preference preference) {
+        if (preference instanceof LazyPreferenceCategory
+                || preference instanceof VirtualSwitchList) {
+            return true;
+        }
+        if (preference instanceof PreferenceGroup) {
+            final PreferenceGroup group = (PreferenceGroup) preference;
+            for (int i = 0; i < group.getPreferenceCount(); i++) {
+                if (needsRows(group.getPreference(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onPreferenceVisibilityChange(Preference preference) {
+        if (mRows == null) {
+            super.onPreferenceVisibilityChange(preference);
+            return;
+        }
+        mHandler.removeCallbacks(mSyncRunnable);
+        mHandler.post(mSyncRunnable);
+    }
+
+    @Override
+    public int getPreferenceAdapterPosition(String key) {
+        if (mRows == null) {
+            return super.getPreferenceAdapterPosition(key);
+        }
+        for (int i = 0; i < mRows.size(); i++) {
+            final Object row = mRows.get(i);
+            final String rowKey = row instanceof LazyRow ? ((LazyRow) row).getKey()
+                    : ((Preference) row).getKey();
+            if (key.equals(rowKey)) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public int getPreferenceAdapterPosition(Preference preference) {
+        if (mRows == null) {
+            return super.getPreferenceAdapterPosition(preference);
+        }
+        Integer position = mPositions.get(preference);
+        if (position == null && preference instanceof VirtualSwitchList) {
+            position = mItemStarts.get(preference);
+        }
+        return position != null ? position : RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public boolean onPreferencePartialChange(CustomPreference preference, Object payload) {
+        final int position = getPreferenceAdapterPosition(preference);
+        if (position == RecyclerView.NO_POSITION) {
+            // No longer shown by this adapter.
+            preference.setOnPartialChangeListener(null);
+            return false;
+        }
+        notifyRowsChanged(position, 1, payload);
+        return true;
+    }
+
+    /**
+     * Lists the shown rows of {@code group} like {@link PreferenceGroupAdapter} does, with
+     * the rows of lazy categories whose preferences do not exist yet as {@link LazyRow}s, and
+     * each virtual list as many times as it has items.
+     *
+     * @param itemStarts Receives the position of the first row of each virtual list.
+     * @return Whether {@code group} has lazy categories or virtual lists.
+     */
+    private boolean flatten(PreferenceGroup group, List<Object> rows,
+                            Map<VirtualSwitchList, Integer> itemStarts) {
+        if (group instanceof LazyPreferenceCategory) {
+            final LazyPreferenceCategory category = (LazyPreferenceCategory) group;
+            for (int i = 0; i < category.getDescriptorCount(); i++) {
+                final Preference preference = category.peekPreference(i);
+                if (preference == null) {
+                    rows.add(new LazyRow(category, i));
+                } else {
+                    if (preference.isVisible()) {
+                        rows.add(preference);
+                    }
+                    PreferenceInternals.setOnPreferenceChangeInternalListener(preference, this);
+                }
+            }
+            return true;
+        }
+        boolean lazy = false;
+        PreferenceInternals.sortPreferences(group);
+        for (int i = 0; i < group.getPreferenceCount(); i++) {
+            final Preference preference = group.getPreference(i);
+            if (preference instanceof VirtualSwitchList) {
+                final VirtualSwitchList list = (VirtualSwitchList) preference;
+                list.setOnItemChangeListener(this);
+                if (preference.isVisible()) {
+                    itemStarts.put(list, rows.size());
+                    // The same instance each time, the items need no objects of their own.
+                    for (int item = list.getItemCount(); item > 0; item--) {
+                        rows.add(list);
+                    }
+                }
+                lazy = true;
+            } else if (preference.isVisible()) {
+                rows.add(preference);
+            }
+            if (preference instanceof PreferenceGroup && PreferenceInternals
+                    .isOnSameScreenAsChildren((PreferenceGroup) preference)) {
+                lazy |= flatten((PreferenceGroup) preference, rows, itemStarts);
+            }
+            PreferenceInternals.setOnPreferenceChangeInternalListener(preference, this);
+        }
+        return lazy;
+    }
+
+    private static final class LazyRow {
+        final LazyPreferenceCategory category;
+        final int index;
+
+        LazyRow(LazyPreferenceCategory category, int index) {
+            this.category = category;
+            this.index = index;
+        }
+
+        String getKey() {
+            return category.getDescriptor(index).getKey();
+        }
+    }
+}
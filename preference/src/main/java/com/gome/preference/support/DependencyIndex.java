@@ -0,0 +1,61 @@
+package com.gome.preference.support;
+
+import java.util.ArrayList;
+
+/**
+ * The batching of dependency changes in a {@code support} hierarchy.
+ * <p>
+ * A {@link CustomPreference} tells its dependents about a change of its state inside a batch.
+ * While it runs, a {@link CustomPreferenceGroupAdapter} holds back the change notifications of
+ * its rows, and notifies them at the end as one range covering them. The dependents are the
+ * ones the support library registered for the preference, so dependents of any class, and a
+ * dependency changed with {@code setDependency}, are followed as usual. A
+ * {@link TwoStateBatch} runs the changes of many preferences in one batch. It is meant to be
+ * used from the main thread only.
+ */
+public final class DependencyIndex {
+
+    private static int sBatchDepth;
+    private static final ArrayList<CustomPreferenceGroupAdapter> sDeferredAdapters =
+            new ArrayList<>();
+
+    private DependencyIndex() {
+    }
+
+    /**
+     * Starts a batch: row changes are held back until the matching {@link #endBatch()}.
+     * Batches nest.
+     */
+    static void beginBatch() {
+        sBatchDepth++;
+    }
+
+    /**
+     * Ends a batch. Ending the outermost one notifies the row changes each adapter held back,
+     * as one range per adapter.
+     */
+    static void endBatch() {
+        if (--sBatchDepth == 0) {
+            final ArrayList<CustomPreferenceGroupAdapter> adapters =
+                    new ArrayList<>(sDeferredAdapters);
+            sDeferredAdapters.clear();
+            for (int i = 0; i < adapters.size(); i++) {
+                adapters.get(i).dispatchDeferredChanges();
+            }
+        }
+    }
+
+    /**
+     * @return Whether a row change of {@code adapter} is part of a batch, in which case the
+     * adapter holds it back until {@link #endBatch()}.
+     */
+    static boolean defer(CustomPreferenceGroupAdapter adapter) {
+        if (sBatchDepth == 0) {
+            return false;
+        }
+        if (!sDeferredAdapters.contains(adapter)) {
+            sDeferredAdapters.add(adapter);
+        }
+        return true;
+    }
+}
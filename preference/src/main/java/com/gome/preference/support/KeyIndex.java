@@ -0,0 +1,131 @@
+package com.gome.preference.support;
+
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceGroup;
+import android.support.v7.preference.PreferenceManager;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.WeakHashMap;
+
+/**
+ * Index from a key to the {@link CustomPreference} with that key, one per {@code support}
+ * {@link PreferenceManager}, so a hierarchy of any size is searched by key in constant time.
+ * <p>
+ * The index is not built: every {@link CustomPreference} adds itself
+ * when it is attached to the hierarchy of a manager, and removes itself when it is detached,
+ * which a removed group and a replaced screen pass on to their preferences, or its key
+ * changes. A {@link CustomPreference} looks up its dependency here,
+ * and the app can find preferences with {@link #findPreference(PreferenceManager, String)}
+ * instead of {@code findPreference}, which walks the whole hierarchy:
+ * <pre>
+ * Preference sync = KeyIndex.findPreference(getPreferenceManager(), "pref_key_sync");
+ * </pre>
+ * The rows of a {@link LazyPreferenceCategory} are indexed once their preferences are
+ * created; until then a lookup falls back to the hierarchy, which creates them.
+ * <p>
+ * Keys are expected to be unique. A key that several preferences attached to the manager had
+ * at once is no longer indexed, and is found by walking the hierarchy as before, so lookups
+ * keep returning the first preference in hierarchy order. Preferences are held weakly. Main
+ * thread only.
+ */
+public final class KeyIndex {
+
+    private static final WeakHashMap<PreferenceManager, KeyIndex> sIndexes =
+            new WeakHashMap<>();
+
+    // Weak, the preferences hold their manager, which keys sIndexes.
+    private final HashMap<String, WeakReference<CustomPreference>> mPreferences =
+            new HashMap<>();
+    // Keys of several preferences at once, found by walking the hierarchy instead.
+    private final HashSet<String> mDuplicateKeys = new HashSet<>();
+
+    private KeyIndex() {
+    }
+
+    /**
+     * @return The index of the hierarchy of {@code manager}, created empty the first time.
+     */
+    public static KeyIndex get(PreferenceManager manager) {
+        KeyIndex index = sIndexes.get(manager);
+        if (index == null) {
+            index = new KeyIndex();
+            sIndexes.put(manager, index);
+        }
+        return index;
+    }
+
+    /**
+     * Finds a preference by key, through the index of {@code manager} for a
+     * {@link CustomPreference} and with {@link PreferenceManager#findPreference} otherwise.
+     */
+    public static Preference findPreference(PreferenceManager manager, String key) {
+        final KeyIndex index = sIndexes.get(manager);
+        final CustomPreference preference = index != null ? index.find(key) : null;
+        return preference != null ? preference : manager.findPreference(key);
+    }
+
+    /**
+     * Removes every {@link CustomPreference} under {@code group} from the index it is in.
+     */
+    public static void remove(PreferenceGroup group) {
+        for (int i = 0; i < group.getPreferenceCount(); i++) {
+            final Preference preference = group.getPreference(i);
+            if (preference instanceof CustomPreference) {
+                ((CustomPreference) preference).removeFromKeyIndex();
+            }
+            if (preference instanceof PreferenceGroup) {
+                remove((PreferenceGroup) preference);
+            }
+        }
+    }
+
+    /**
+     * @return The indexed preference with {@code key}, or {@code null} if there is none or
+     * several preferences had the key.
+     */
+    public CustomPreference find(String key) {
+        if (key == null) {
+            return null;
+        }
+        final WeakReference<CustomPreference> reference = mPreferences.get(key);
+        if (reference == null) {
+            return null;
+        }
+        final CustomPreference preference = reference.get();
+        if (preference == null) {
+            mPreferences.remove(key);
+        }
+        return preference;
+    }
+
+    /**
+     * @return The number of indexed keys.
+     */
+    public int size() {
+        return mPreferences.size();
+    }
+
+    void add(CustomPreference preference) {
+        final String key = preference.getKey();
+        if (key == null || mDuplicateKeys.contains(key)) {
+            return;
+        }
+        final CustomPreference indexed = find(key);
+        if (indexed == null) {
+            mPreferences.put(key, new WeakReference<>(preference));
+        } else if (indexed != preference) {
+            // Left to the hierarchy walk, which finds the first one in hierarchy order.
+            mPreferences.remove(key);
+            mDuplicateKeys.add(key);
+        }
+    }
+
+    void remove(CustomPreference preference) {
+        final String key = preference.getKey();
+        if (key != null && find(key) == preference) {
+            mPreferences.remove(key);
+        }
+    }
+}
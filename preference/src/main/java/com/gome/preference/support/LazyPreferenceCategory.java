@@ -0,0 +1,165 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceCategory;
+import android.util.AttributeSet;
+
+import java.util.ArrayList;
+
+/**
+ * A {@code support} {@link PreferenceCategory} whose rows are listed from
+ * {@link PreferenceDescriptor}s and only become preferences when they are needed: when a
+ * {@link CustomPreferenceGroupAdapter} first shows the row, or when the row is looked up with
+ * {@link #findPreference(CharSequence)}, for example as the dependency of another preference.
+ * Until then a row costs a descriptor instead of a preference, so a long category that is
+ * never scrolled through costs little to create and to keep.
+ * <p>
+ * The rows are added as descriptors only, adding a preference directly throws. Set up the
+ * preferences as they are created with an {@link OnMaterializeListener}.
+ */
+public class LazyPreferenceCategory extends PreferenceCategory {
+
+    private final ArrayList<PreferenceDescriptor> mDescriptors = new ArrayList<>();
+    // The preference of each descriptor, null until it is created.
+    private final ArrayList<Preference> mPreferences = new ArrayList<>();
+    private boolean mMaterializing;
+    private OnMaterializeListener mOnMaterializeListener;
+
+    /**
+     * Interface definition for a callback to be invoked when the preference of a row is
+     * created.
+     */
+    public interface OnMaterializeListener {
+        /**
+         * Called before {@code preference} is added to {@code category}, so its default
+         * value and dependency can still be set.
+         */
+        void onMaterialize(LazyPreferenceCategory category, Preference preference,
+                           PreferenceDescriptor descriptor);
+    }
+
+    public LazyPreferenceCategory(Context context, AttributeSet attrs, int defStyleAttr,
+                                  int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    public LazyPreferenceCategory(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public LazyPreferenceCategory(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public LazyPreferenceCategory(Context context) {
+        super(context);
+    }
+
+    public void setOnMaterializeListener(@Nullable OnMaterializeListener listener) {
+        mOnMaterializeListener = listener;
+    }
+
+    /**
+     * Adds a row at the end of this category.
+     */
+    public void addDescriptor(PreferenceDescriptor descriptor) {
+        mDescriptors.add(descriptor);
+        mPreferences.add(null);
+        notifyHierarchyChanged();
+    }
+
+    public int getDescriptorCount() {
+        return mDescriptors.size();
+    }
+
+    public PreferenceDescriptor getDescriptor(int index) {
+        return mDescriptors.get(index);
+    }
+
+    /**
+     * @return The preference of the row {@code index}, or {@code null} if it was not created
+     * yet.
+     */
+    @Nullable
+    public Preference peekPreference(int index) {
+        return mPreferences.get(index);
+    }
+
+    /**
+     * @return The preference of the row {@code index}, created and added to this category
+     * if it did not exist yet.
+     */
+    public Preference materialize(int index) {
+        Preference preference = mPreferences.get(index);
+        if (preference != null) {
+            return preference;
+        }
+        final PreferenceDescriptor descriptor = mDescriptors.get(index);
+        preference = descriptor.create(getContext());
+        preference.setOrder(index);
+        if (mOnMaterializeListener != null) {
+            mOnMaterializeListener.onMaterialize(this, preference, descriptor);
+        }
+        mPreferences.set(index, preference);
+        mMaterializing = true;
+        try {
+            addPreference(preference);
+        } finally {
+            mMaterializing = false;
+        }
+        return preference;
+    }
+
+    /**
+     * @return Whether a row is being added by {@link #materialize(int)}. The rows of this
+     * category do not change then, so the adapter does not need to list them again.
+     */
+    boolean isMaterializing() {
+        return mMaterializing;
+    }
+
+    /**
+     * Also finds rows whose preferences were not created yet, creating them.
+     */
+    @Override
+    public Preference findPreference(CharSequence key) {
+        final Preference preference = super.findPreference(key);
+        if (preference != null || key == null) {
+            return preference;
+        }
+        for (int i = 0; i < mDescriptors.size(); i++) {
+            if (key.toString().equals(mDescriptors.get(i).getKey())) {
+                return materialize(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean removePreference(Preference preference) {
+        final int index = mPreferences.indexOf(preference);
+        if (index >= 0) {
+            mDescriptors.remove(index);
+            mPreferences.remove(index);
+        }
+        return super.removePreference(preference);
+    }
+
+    @Override
+    public void removeAll() {
+        mDescriptors.clear();
+        mPreferences.clear();
+        super.removeAll();
+    }
+
+    @Override
+    protected boolean onPrepareAddPreference(Preference preference) {
+        if (!mMaterializing) {
+            throw new IllegalArgumentException(
+                    "Add the rows of a LazyPreferenceCategory with addDescriptor");
+        }
+        return super.onPrepareAddPreference(preference);
+    }
+}
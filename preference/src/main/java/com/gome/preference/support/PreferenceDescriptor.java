@@ -0,0 +1,74 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.annotation.StringRes;
+import android.support.v7.preference.Preference;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+
+/**
+ * The few values needed to list a row of a {@link LazyPreferenceCategory} before its
+ * preference exists: the key, the type of the preference and its title.
+ */
+public final class PreferenceDescriptor {
+
+    // Constructors taking a Context, by type. Main thread only.
+    private static final HashMap<Class<?>, Constructor<? extends Preference>> sConstructors =
+            new HashMap<>();
+
+    private final String mKey;
+    private final Class<? extends Preference> mType;
+    @StringRes
+    private final int mTitleResId;
+
+    /**
+     * @param key        The key of the preference.
+     * @param type       The type of the preference, it needs a public constructor taking a
+     *                   {@link Context}.
+     * @param titleResId The title of the preference, or 0 for none.
+     */
+    public PreferenceDescriptor(String key, Class<? extends Preference> type,
+                                @StringRes int titleResId) {
+        mKey = key;
+        mType = type;
+        mTitleResId = titleResId;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    public Class<? extends Preference> getType() {
+        return mType;
+    }
+
+    @StringRes
+    public int getTitleResId() {
+        return mTitleResId;
+    }
+
+    /**
+     * Creates the described preference, with its key and title set.
+     */
+    Preference create(Context context) {
+        final Preference preference;
+        try {
+            Constructor<? extends Preference> constructor = sConstructors.get(mType);
+            if (constructor == null) {
+                constructor = mType.getConstructor(Context.class);
+                sConstructors.put(mType, constructor);
+            }
+            preference = constructor.newInstance(context);
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException
+                | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create " + mType.getName(), e);
+        }
+        preference.setKey(mKey);
+        if (mTitleResId != 0) {
+            preference.setTitle(mTitleResId);
+        }
+        return preference;
+    }
+}
@@ -17,18 +17,21 @@
 package com.gome.preference.support;
 
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.support.annotation.StringRes;
 import android.support.v7.preference.PreferenceViewHolder;
 import android.support.v7.widget.SwitchCompat;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 import android.widget.Checkable;
 import android.widget.CompoundButton;
 import android.widget.Switch;
 
+import com.gome.preference.GomeSwitch;
+import com.gome.preference.PreferenceTrace;
 import com.gome.preference.R;
+import com.gome.preference.StyledAttributeCache;
+
+import java.util.List;
 
 /**
  * A {@link CustomPreference} that provides a two-state toggleable option.
@@ -42,20 +45,32 @@ import com.gome.preference.R;
  * @attr ref android.R.styleable#SwitchPreference_disableDependentsState
  */
 public class SwitchPreference extends TwoStatePreference {
-    private static final String TAG = SwitchPreference.class.getSimpleName();
+    private static final int[] ATTRS = {
+            android.R.attr.summaryOn, android.R.attr.summaryOff, android.R.attr.disableDependentsState
+    };
     private final Listener mListener = new Listener();
 
     // Switch text for on and off states
     private CharSequence mSwitchOn;
     private CharSequence mSwitchOff;
 
-    private class Listener implements CompoundButton.OnCheckedChangeListener {
+    private class Listener implements CompoundButton.OnCheckedChangeListener,
+            GomeSwitch.OnCheckedChangeListener {
         @Override
         public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            onCheckedChanged((Checkable) buttonView, isChecked);
+        }
+
+        @Override
+        public void onCheckedChanged(GomeSwitch switchView, boolean isChecked) {
+            onCheckedChanged((Checkable) switchView, isChecked);
+        }
+
+        private void onCheckedChanged(Checkable checkable, boolean isChecked) {
             if (!callChangeListener(isChecked)) {
                 // Listener didn't like it, change it back.
-                // CompoundButton will make sure we don't recurse.
-                buttonView.setChecked(!isChecked);
+                // The switch will make sure we don't recurse.
+                checkable.setChecked(!isChecked);
                 return;
             }
 
@@ -129,17 +144,16 @@ public class SwitchPreference extends TwoStatePreference {
     }
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
-        TypedArray typedArray = context.obtainStyledAttributes(attrs, new int[]{
-                android.R.attr.summaryOn, android.R.attr.summaryOff, android.R.attr.disableDependentsState
-        }, defStyleAttr, defStyleRes);
+        StyledAttributeCache.Values values = StyledAttributeCache.obtain(context, attrs, ATTRS,
+                defStyleAttr, defStyleRes);
 
-        setSummaryOn(typedArray.getString(0));
-        setSummaryOff(typedArray.getString(1));
-        setDisableDependentsState(typedArray.getBoolean(2, false));
-
-        typedArray.recycle();
-        Log.d(TAG, "setWidgetLayoutResource");
+        setSummaryOn(values.getString(0));
+        setSummaryOff(values.getString(1));
+        setDisableDependentsState(values.getBoolean(2, false));
         setWidgetLayoutResource(R.layout.preference_widget_switch);
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.INIT, getKey(), getWidgetLayoutResource());
+        }
     }
 
 
@@ -150,6 +164,31 @@ public class SwitchPreference extends TwoStatePreference {
         this.syncSwitchView(holder);
     }
 
+    /**
+     * A {@link #PAYLOAD_CHECKED} change only syncs the summary and the switch, which then
+     * animates to its new state in the same views.
+     */
+    @Override
+    public void onBindViewHolder(PreferenceViewHolder holder, List<Object> payloads) {
+        super.onBindViewHolder(holder, payloads);
+        if (isStatePayloads(payloads) && payloads.contains(PAYLOAD_CHECKED)) {
+            this.syncSwitchView(holder);
+        }
+    }
+
+    /**
+     * Toggles a {@link GomeSwitch} in place, which animates without requesting a layout.
+     */
+    @Override
+    boolean syncWidgetInPlace(PreferenceViewHolder holder) {
+        final View switchView = holder.findViewById(R.id.custom_switch_widget);
+        if (!(switchView instanceof GomeSwitch)) {
+            return false;
+        }
+        this.syncSwitchView(switchView);
+        return true;
+    }
+
     private void syncSwitchView(PreferenceViewHolder holder) {
 //        View switchView = holder.findViewById(R.id.switch_widget);
         View switchView = holder.findViewById(R.id.custom_switch_widget);
@@ -157,12 +196,22 @@ public class SwitchPreference extends TwoStatePreference {
     }
 
     private void syncSwitchView(View view) {
-        Log.d(TAG, "view: " + view);
-        Log.d(TAG, "mChecked: " + mChecked);
-        if (view instanceof Checkable) {
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.SYNC_SWITCH, getKey(), isChecked() ? 1 : 0);
+        }
+        if (view instanceof GomeSwitch) {
+            final GomeSwitch switchView = (GomeSwitch) view;
+            // The state never requests a layout, the thumb animates in place.
+            switchView.setTextOn(this.mSwitchOn);
+            switchView.setTextOff(this.mSwitchOff);
+            switchView.setOnCheckedChangeListener(null);
+            switchView.setChecked(isChecked());
+            switchView.setOnCheckedChangeListener(mListener);
+        } else if (view instanceof Checkable) {
+            // A platform switch from a custom widget layout.
             final Checkable checkable = (Checkable) view;
             final boolean isChecked = checkable.isChecked();
-            if (isChecked == mChecked) return;
+            if (isChecked == isChecked()) return;
 
             if (view instanceof SwitchCompat) {
                 SwitchCompat switchView = (SwitchCompat) view;
@@ -0,0 +1,71 @@
+package com.gome.preference.support;
+
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceGroup;
+
+import com.gome.preference.PreferenceWriteBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies many checked states to a {@code support} hierarchy at once, see
+ * {@link com.gome.preference.TwoStateBatch}. A {@link CustomPreferenceGroupAdapter} showing
+ * the hierarchy is notified once, with one {@code notifyItemRangeChanged}.
+ * <p>
+ * Rows of a {@link LazyPreferenceCategory} whose preferences were not created yet are created
+ * if their key is in the values.
+ */
+public final class TwoStateBatch {
+
+    private TwoStateBatch() {
+    }
+
+    /**
+     * Sets the checked state of every {@link TwoStatePreference} under {@code group} whose key
+     * is in {@code values}. Keys without such a preference are ignored.
+     *
+     * @return The number of preferences whose state was set.
+     */
+    public static int apply(PreferenceGroup group, Map<String, Boolean> values) {
+        final ArrayList<TwoStatePreference> preferences = new ArrayList<>();
+        collect(group, values, preferences);
+        PreferenceWriteBuffer.beginTransaction();
+        DependencyIndex.beginBatch();
+        try {
+            for (int i = 0; i < preferences.size(); i++) {
+                final TwoStatePreference preference = preferences.get(i);
+                preference.setChecked(values.get(preference.getKey()));
+            }
+        } finally {
+            DependencyIndex.endBatch();
+            PreferenceWriteBuffer.endTransaction();
+        }
+        return preferences.size();
+    }
+
+    private static void collect(PreferenceGroup group, Map<String, Boolean> values,
+                                List<TwoStatePreference> preferences) {
+        if (group instanceof LazyPreferenceCategory) {
+            final LazyPreferenceCategory category = (LazyPreferenceCategory) group;
+            for (int i = 0; i < category.getDescriptorCount(); i++) {
+                final PreferenceDescriptor descriptor = category.getDescriptor(i);
+                if (TwoStatePreference.class.isAssignableFrom(descriptor.getType())
+                        && values.get(descriptor.getKey()) != null) {
+                    preferences.add((TwoStatePreference) category.materialize(i));
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < group.getPreferenceCount(); i++) {
+            final Preference preference = group.getPreference(i);
+            if (preference instanceof TwoStatePreference
+                    && values.get(preference.getKey()) != null) {
+                preferences.add((TwoStatePreference) preference);
+            } else if (preference instanceof PreferenceGroup) {
+                collect((PreferenceGroup) preference, values, preferences);
+            }
+        }
+    }
+}
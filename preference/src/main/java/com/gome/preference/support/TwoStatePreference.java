@@ -20,12 +20,23 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v7.preference.PreferenceManager;
 import android.support.v7.preference.PreferenceViewHolder;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.TextView;
 
+import com.gome.preference.MainThreadIoDetector;
+import com.gome.preference.PersistedBooleans;
+import com.gome.preference.PreferenceChangeStream;
+import com.gome.preference.PreferenceMetrics;
+import com.gome.preference.PreferenceTrace;
+import com.gome.preference.PreferenceWriteBuffer;
+import com.gome.preference.TwoStateTable;
+
+import java.util.List;
+
 /**
  * Common base class for preferences that have two selectable states, persist a
  * boolean value in SharedPreferences, and may have dependent preferences that are
@@ -34,9 +45,19 @@ import android.widget.TextView;
 public abstract class TwoStatePreference extends CustomPreference {
     private CharSequence mSummaryOn;
     private CharSequence mSummaryOff;
-    protected boolean mChecked;
-    private boolean mCheckedSet;
-    private boolean mDisableDependentsState;
+
+    private static final int FLAG_CHECKED = 1;
+    private static final int FLAG_CHECKED_SET = 1 << 1;
+    private static final int FLAG_DISABLE_DEPENDENTS_STATE = 1 << 2;
+
+    // The FLAG_* bits, or the index in mStateTable while bound to one.
+    private int mState;
+    private TwoStateTable mStateTable;
+
+    // Set while the superclass attaches, which leaves the initial value to this class.
+    private boolean mAttaching;
+    // The default value the superclass offered while attaching, if any.
+    private Object mAttachingDefaultValue;
 
     public TwoStatePreference(
             Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
@@ -71,16 +92,36 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @param checked The checked state.
      */
     public void setChecked(boolean checked) {
-        // Always persist/notify the first time; don't assume the field's default of false.
-        final boolean changed = mChecked != checked;
-        if (changed || !mCheckedSet) {
-            mChecked = checked;
-            mCheckedSet = true;
-            persistBoolean(checked);
-            if (changed) {
-                notifyDependencyChange(shouldDisableDependents());
-                notifyChanged();
+        final long start = PreferenceMetrics.start();
+        if (PreferenceTrace.ENABLED) {
+            PreferenceTrace.trace(PreferenceTrace.SET_CHECKED, getKey(), checked ? 1 : 0);
+        }
+        try {
+            // Always persist/notify the first time; don't assume the field's default of false.
+            final boolean changed = isChecked() != checked;
+            final boolean checkedSet = isCheckedSet();
+            if (changed || !checkedSet) {
+                if (mStateTable != null) {
+                    mStateTable.setChecked(mState, checked);
+                    mStateTable.setCheckedSet(mState, true);
+                } else {
+                    setFlag(FLAG_CHECKED, checked);
+                    setFlag(FLAG_CHECKED_SET, true);
+                    persistBoolean(checked);
+                }
+                if (changed) {
+                    notifyDependencyChange(shouldDisableDependents());
+                    if (!syncCheckedInPlace()) {
+                        notifyChanged(PAYLOAD_CHECKED);
+                    }
+                    // Setting the initial value is no change to the persisted state.
+                    if (checkedSet) {
+                        PreferenceChangeStream.post(getKey(), checked);
+                    }
+                }
             }
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.SET_CHECKED, start);
         }
     }
 
@@ -90,12 +131,147 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @return The checked state.
      */
     public boolean isChecked() {
-        return mChecked;
+        return mStateTable != null ? mStateTable.isChecked(mState) : hasFlag(FLAG_CHECKED);
+    }
+
+    private boolean isCheckedSet() {
+        return mStateTable != null ? mStateTable.isCheckedSet(mState)
+                : hasFlag(FLAG_CHECKED_SET);
+    }
+
+    private boolean hasFlag(int flag) {
+        return (mState & flag) != 0;
+    }
+
+    private void setFlag(int flag, boolean value) {
+        mState = value ? mState | flag : mState & ~flag;
+    }
+
+    /**
+     * Binds this preference to a screen level {@link TwoStateTable}. From then on its state
+     * is kept in, and persisted with, the table instead of under its own key. If the table has
+     * no value for the key yet, the current state of this preference is carried over.
+     * <p>
+     * A persistent preference with a key is bound to the
+     * {@link TwoStateTable#getDefault() default table} when it is attached to a hierarchy.
+     *
+     * @param stateTable The table, or {@code null} to keep the state in this preference again.
+     */
+    public void setStateTable(TwoStateTable stateTable) {
+        if (stateTable == mStateTable) {
+            return;
+        }
+        final boolean checked = isChecked();
+        final boolean checkedSet = isCheckedSet();
+        final boolean disableDependentsState = getDisableDependentsState();
+        if (stateTable == null) {
+            mStateTable = null;
+            mState = 0;
+            setFlag(FLAG_CHECKED, checked);
+            setFlag(FLAG_CHECKED_SET, checkedSet);
+            setFlag(FLAG_DISABLE_DEPENDENTS_STATE, disableDependentsState);
+            return;
+        }
+        if (!hasKey()) {
+            throw new IllegalStateException("Preference does not have a key assigned.");
+        }
+        final int index = stateTable.indexOf(getKey());
+        if (checkedSet && !stateTable.hasValue(index)) {
+            stateTable.setChecked(index, checked);
+        }
+        stateTable.setCheckedSet(index, checkedSet);
+        stateTable.setDisableDependentsState(index, disableDependentsState);
+        mStateTable = stateTable;
+        mState = index;
+    }
+
+    /**
+     * @return The table this preference is bound to, if any.
+     */
+    public TwoStateTable getStateTable() {
+        return mStateTable;
+    }
+
+    @Override
+    protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+        // Before the initial value is set, which reads the table.
+        final TwoStateTable stateTable = TwoStateTable.getDefault();
+        if (stateTable != null && mStateTable == null && hasKey() && isPersistent()) {
+            setStateTable(stateTable);
+        }
+        // The superclass only asks the SharedPreferences whether there is a value, which
+        // misses the data store and the write buffer.
+        mAttaching = true;
+        try {
+            super.onAttachedToHierarchy(preferenceManager);
+        } finally {
+            mAttaching = false;
+        }
+        final Object defaultValue = mAttachingDefaultValue;
+        mAttachingDefaultValue = null;
+        dispatchSetInitialValue(defaultValue);
+    }
+
+    /**
+     * Restores the persisted state if there is one, wherever it is kept, and sets
+     * {@code defaultValue} otherwise.
+     */
+    private void dispatchSetInitialValue(Object defaultValue) {
+        if (shouldPersist() && hasPersistedBoolean()) {
+            onSetInitialValue(true, null);
+        } else if (defaultValue != null) {
+            onSetInitialValue(false, defaultValue);
+        }
+    }
+
+    private boolean hasPersistedBoolean() {
+        if (mStateTable != null && mStateTable.hasValue(mState)) {
+            return true;
+        }
+        final Boolean contains = PersistedBooleans.contains(getPreferenceDataStore(),
+                getSharedPreferences(), getKey());
+        if (contains != null) {
+            return contains;
+        }
+        // The first read of a cold open, which waits for the SharedPreferences to load.
+        final long ioStart = MainThreadIoDetector.begin();
+        try {
+            return getSharedPreferences().contains(getKey());
+        } finally {
+            MainThreadIoDetector.end(MainThreadIoDetector.READ, getKey(), ioStart);
+        }
+    }
+
+    /**
+     * Reports no persistence while the superclass attaches, so it does not decide the initial
+     * value, see {@link #dispatchSetInitialValue(Object)}.
+     */
+    @Override
+    protected boolean shouldPersist() {
+        return !mAttaching && super.shouldPersist();
+    }
+
+    /**
+     * Moves the state to the index of the new key when bound to a {@link TwoStateTable}.
+     */
+    @Override
+    public void setKey(String key) {
+        final TwoStateTable stateTable = mStateTable;
+        if (stateTable == null || TextUtils.equals(key, getKey())) {
+            super.setKey(key);
+            return;
+        }
+        setStateTable(null);
+        super.setKey(key);
+        if (hasKey()) {
+            setStateTable(stateTable);
+        }
     }
 
     @Override
     public boolean shouldDisableDependents() {
-        boolean shouldDisable = mDisableDependentsState ? mChecked : !mChecked;
+        final boolean checked = isChecked();
+        boolean shouldDisable = getDisableDependentsState() ? checked : !checked;
         return shouldDisable || super.shouldDisableDependents();
     }
 
@@ -107,7 +283,7 @@ public abstract class TwoStatePreference extends CustomPreference {
     public void setSummaryOn(CharSequence summary) {
         mSummaryOn = summary;
         if (isChecked()) {
-            notifyChanged();
+            notifyChanged(PAYLOAD_SUMMARY);
         }
     }
 
@@ -136,7 +312,7 @@ public abstract class TwoStatePreference extends CustomPreference {
     public void setSummaryOff(CharSequence summary) {
         mSummaryOff = summary;
         if (!isChecked()) {
-            notifyChanged();
+            notifyChanged(PAYLOAD_SUMMARY);
         }
     }
 
@@ -165,7 +341,10 @@ public abstract class TwoStatePreference extends CustomPreference {
      * or when this preference is off ({@code false}).
      */
     public boolean getDisableDependentsState() {
-        return mDisableDependentsState;
+        if (mStateTable != null) {
+            return mStateTable.getDisableDependentsState(mState);
+        }
+        return hasFlag(FLAG_DISABLE_DEPENDENTS_STATE);
     }
 
     /**
@@ -175,7 +354,57 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @param disableDependentsState The preference state that should disable dependents.
      */
     public void setDisableDependentsState(boolean disableDependentsState) {
-        mDisableDependentsState = disableDependentsState;
+        if (mStateTable != null) {
+            mStateTable.setDisableDependentsState(mState, disableDependentsState);
+        } else {
+            setFlag(FLAG_DISABLE_DEPENDENTS_STATE, disableDependentsState);
+        }
+    }
+
+    /**
+     * Persists through {@link PersistedBooleans}, so with a buffering
+     * {@link PreferenceWriteBuffer} quick successive toggles end up in a single
+     * SharedPreferences edit.
+     */
+    @Override
+    protected boolean persistBoolean(boolean value) {
+        final long start = PreferenceMetrics.start();
+        try {
+            if (!shouldPersist()) {
+                return super.persistBoolean(value);
+            }
+            if (PersistedBooleans.persist(getPreferenceDataStore(), getSharedPreferences(),
+                    getKey(), value)) {
+                return true;
+            }
+            final long ioStart = MainThreadIoDetector.begin();
+            try {
+                return super.persistBoolean(value);
+            } finally {
+                MainThreadIoDetector.end(MainThreadIoDetector.WRITE, getKey(), ioStart);
+            }
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.PERSIST_BOOLEAN, start);
+        }
+    }
+
+    @Override
+    protected boolean getPersistedBoolean(boolean defaultReturnValue) {
+        if (!shouldPersist()) {
+            return super.getPersistedBoolean(defaultReturnValue);
+        }
+        final Boolean persisted = PersistedBooleans.getPersisted(getPreferenceDataStore(),
+                getSharedPreferences(), getKey(), defaultReturnValue);
+        if (persisted != null) {
+            return persisted;
+        }
+        // Only the SharedPreferences can still be loading from the disk.
+        final long ioStart = MainThreadIoDetector.begin();
+        try {
+            return super.getPersistedBoolean(defaultReturnValue);
+        } finally {
+            MainThreadIoDetector.end(MainThreadIoDetector.READ, getKey(), ioStart);
+        }
     }
 
     @Override
@@ -185,10 +414,96 @@ public abstract class TwoStatePreference extends CustomPreference {
 
     @Override
     protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
-        setChecked(restoreValue ? getPersistedBoolean(mChecked)
+        if (mAttaching) {
+            mAttachingDefaultValue = defaultValue;
+            return;
+        }
+        if (mStateTable != null && mStateTable.hasValue(mState)) {
+            setChecked(mStateTable.isChecked(mState));
+            return;
+        }
+        setChecked(restoreValue ? getPersistedBoolean(isChecked())
                 : (Boolean) defaultValue);
     }
 
+    /**
+     * Applies {@link #PAYLOAD_CHECKED} and {@link #PAYLOAD_SUMMARY} changes by syncing the
+     * summary only, anything else rebinds the whole row.
+     */
+    @Override
+    public void onBindViewHolder(PreferenceViewHolder holder, List<Object> payloads) {
+        if (!isStatePayloads(payloads)) {
+            onBindViewHolder(holder);
+            return;
+        }
+        syncSummaryView(holder);
+    }
+
+    /**
+     * @return Whether {@code payloads} only name the checked state or the summary.
+     */
+    static boolean isStatePayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (!PAYLOAD_CHECKED.equals(payload) && !PAYLOAD_SUMMARY.equals(payload)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The summary for the checked state, or {@code null} to hide the summary view.
+     */
+    private CharSequence getStateSummary() {
+        final boolean checked = isChecked();
+        if (checked && !TextUtils.isEmpty(mSummaryOn)) {
+            return mSummaryOn;
+        } else if (!checked && !TextUtils.isEmpty(mSummaryOff)) {
+            return mSummaryOff;
+        }
+        final CharSequence summary = getSummary();
+        return !TextUtils.isEmpty(summary) ? summary : null;
+    }
+
+    /**
+     * Applies a checked state change to the row this preference is bound to without the
+     * adapter, when the summary stays the same and only the widget has to change. That skips
+     * the adapter notification and the layout pass of the list that follows.
+     *
+     * @return Whether the row was updated, otherwise it has to be rebound.
+     */
+    boolean syncCheckedInPlace() {
+        final PreferenceViewHolder holder = getBoundViewHolder();
+        if (holder == null) {
+            return false;
+        }
+        final View view = holder.findViewById(android.R.id.summary);
+        if (view instanceof TextView) {
+            final TextView summaryView = (TextView) view;
+            final CharSequence summary = getStateSummary();
+            // Only equal plain strings count as unchanged, spanned text is copied when set.
+            final boolean unchanged = summary == null
+                    ? summaryView.getVisibility() == View.GONE
+                    : summaryView.getVisibility() == View.VISIBLE
+                    && summary instanceof String && summary.equals(summaryView.getText());
+            if (!unchanged) {
+                return false;
+            }
+        }
+        return syncWidgetInPlace(holder);
+    }
+
+    /**
+     * Updates the widget of the row in {@code holder} to the checked state, without requesting
+     * a layout.
+     *
+     * @return Whether the widget could be updated that way. The default has no widget to
+     * update.
+     */
+    boolean syncWidgetInPlace(PreferenceViewHolder holder) {
+        return false;
+    }
+
     /**
      * Sync a summary holder contained within holder's subhierarchy with the correct summary text.
      *
@@ -204,32 +519,22 @@ public abstract class TwoStatePreference extends CustomPreference {
      * @hide
      */
     protected void syncSummaryView(View view) {
-        if (!(view instanceof TextView)) {
-            return;
-        }
-        TextView summaryView = (TextView) view;
-        boolean useDefaultSummary = true;
-        if (mChecked && !TextUtils.isEmpty(mSummaryOn)) {
-            summaryView.setText(mSummaryOn);
-            useDefaultSummary = false;
-        } else if (!mChecked && !TextUtils.isEmpty(mSummaryOff)) {
-            summaryView.setText(mSummaryOff);
-            useDefaultSummary = false;
-        }
-        if (useDefaultSummary) {
-            final CharSequence summary = getSummary();
-            if (!TextUtils.isEmpty(summary)) {
+        final long start = PreferenceMetrics.start();
+        try {
+            if (!(view instanceof TextView)) {
+                return;
+            }
+            TextView summaryView = (TextView) view;
+            final CharSequence summary = getStateSummary();
+            if (summary != null) {
                 summaryView.setText(summary);
-                useDefaultSummary = false;
             }
-        }
-        int newVisibility = View.GONE;
-        if (!useDefaultSummary) {
-            // Someone has written to it
-            newVisibility = View.VISIBLE;
-        }
-        if (newVisibility != summaryView.getVisibility()) {
-            summaryView.setVisibility(newVisibility);
+            final int newVisibility = summary != null ? View.VISIBLE : View.GONE;
+            if (newVisibility != summaryView.getVisibility()) {
+                summaryView.setVisibility(newVisibility);
+            }
+        } finally {
+            PreferenceMetrics.stop(PreferenceMetrics.SYNC_SUMMARY_VIEW, start);
         }
     }
 
@@ -0,0 +1,196 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceViewHolder;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.gome.preference.GomeSwitch;
+import com.gome.preference.R;
+
+/**
+ * A {@code support} preference showing the items of a {@link DataSource} as switch rows, in the
+ * {@code origin_preference} and {@code preference_widget_switch} style of
+ * {@link SwitchPreference}, without a preference per item.
+ * <p>
+ * A {@link CustomPreferenceGroupAdapter} lists one row per item in place of this preference,
+ * and binds the rows straight from the data source. Only the bound rows exist, so a list of
+ * thousands of items, such as one toggle per installed app, costs as much as the rows on
+ * screen:
+ * <pre>
+ * VirtualSwitchList list = new VirtualSwitchList(getPreferenceManager().getContext());
+ * list.setDataSource(new VirtualSwitchList.DataSource() {
+ *     public int getCount() { return mApps.size(); }
+ *     public CharSequence getTitle(int index) { return mApps.get(index).label; }
+ *     public CharSequence getSummary(int index) { return null; }
+ *     public boolean isChecked(int index) { return mNotify.get(index); }
+ *     public void setChecked(int index, boolean checked) { mNotify.set(index, checked); }
+ * });
+ * getPreferenceScreen().addPreference(list);
+ * </pre>
+ * The items persist nothing themselves; the data source stores the state. Other adapters show
+ * this preference as a single row.
+ */
+public class VirtualSwitchList extends Preference {
+
+    private DataSource mDataSource;
+    private OnItemChangeListener mOnItemChangeListener;
+
+    /**
+     * The items of a {@link VirtualSwitchList}. Only called on the main thread.
+     */
+    public interface DataSource {
+        int getCount();
+
+        CharSequence getTitle(int index);
+
+        /**
+         * @return The summary of the item, {@code null} for none.
+         */
+        @Nullable
+        CharSequence getSummary(int index);
+
+        boolean isChecked(int index);
+
+        /**
+         * Called when the user toggled the item at {@code index}. Store the new state, or
+         * leave it unchanged to reject it, {@link #isChecked(int)} is read back right after.
+         */
+        void setChecked(int index, boolean checked);
+    }
+
+    /**
+     * Interface definition for the adapter showing the list, to be told about item changes.
+     */
+    interface OnItemChangeListener {
+        void onItemChanged(VirtualSwitchList list, int index);
+    }
+
+    public VirtualSwitchList(Context context, AttributeSet attrs, int defStyleAttr,
+                             int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    public VirtualSwitchList(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public VirtualSwitchList(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public VirtualSwitchList(Context context) {
+        super(context);
+    }
+
+    /**
+     * Sets the items to show and lists them again.
+     */
+    public void setDataSource(@Nullable DataSource dataSource) {
+        mDataSource = dataSource;
+        notifyDataSetChanged();
+    }
+
+    @Nullable
+    public DataSource getDataSource() {
+        return mDataSource;
+    }
+
+    /**
+     * @return The number of items, 0 without a data source.
+     */
+    public int getItemCount() {
+        return mDataSource != null ? mDataSource.getCount() : 0;
+    }
+
+    /**
+     * Should be called when items were added, removed or moved, so they are listed again.
+     */
+    public void notifyDataSetChanged() {
+        notifyHierarchyChanged();
+    }
+
+    /**
+     * Should be called when the title, summary or state of the item at {@code index} changed
+     * other than through a toggle of its row.
+     */
+    public void notifyItemChanged(int index) {
+        if (mOnItemChangeListener != null) {
+            mOnItemChangeListener.onItemChanged(this, index);
+        }
+    }
+
+    void setOnItemChangeListener(OnItemChangeListener listener) {
+        mOnItemChangeListener = listener;
+    }
+
+    /**
+     * Binds the row in {@code holder} to the item at {@code index}.
+     */
+    void bindItem(PreferenceViewHolder holder, int index) {
+        bindText(holder.findViewById(android.R.id.title), mDataSource.getTitle(index));
+        bindText(holder.findViewById(android.R.id.summary), mDataSource.getSummary(index));
+        setVisibility(holder.findViewById(android.R.id.icon), View.GONE);
+        setVisibility(holder.findViewById(android.R.id.widget_frame), View.VISIBLE);
+        setEnabledStateOnViews(holder.itemView, isEnabled());
+
+        final View switchView = holder.findViewById(R.id.custom_switch_widget);
+        if (switchView instanceof GomeSwitch) {
+            final GomeSwitch gomeSwitch = (GomeSwitch) switchView;
+            gomeSwitch.setOnCheckedChangeListener(null);
+            gomeSwitch.setTextOn(null);
+            gomeSwitch.setTextOff(null);
+            gomeSwitch.setChecked(mDataSource.isChecked(index));
+            // A recycled row does not animate to the state of its new item.
+            gomeSwitch.jumpDrawablesToCurrentState();
+        }
+    }
+
+    /**
+     * Toggles the item at {@code index} through the data source, and the switch of its row in
+     * place.
+     */
+    void toggleItem(PreferenceViewHolder holder, int index) {
+        if (!isEnabled()) {
+            return;
+        }
+        mDataSource.setChecked(index, !mDataSource.isChecked(index));
+        final View switchView = holder.findViewById(R.id.custom_switch_widget);
+        if (switchView instanceof GomeSwitch) {
+            ((GomeSwitch) switchView).setChecked(mDataSource.isChecked(index));
+        }
+    }
+
+    private static void bindText(View view, CharSequence text) {
+        if (view instanceof TextView) {
+            final boolean empty = TextUtils.isEmpty(text);
+            if (!empty) {
+                ((TextView) view).setText(text);
+            }
+            setVisibility(view, empty ? View.GONE : View.VISIBLE);
+        }
+    }
+
+    private static void setVisibility(View view, int visibility) {
+        if (view != null && view.getVisibility() != visibility) {
+            view.setVisibility(visibility);
+        }
+    }
+
+    private static void setEnabledStateOnViews(View view, boolean enabled) {
+        if (view.isEnabled() != enabled) {
+            view.setEnabled(enabled);
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                setEnabledStateOnViews(group.getChildAt(i), enabled);
+            }
+        }
+    }
+}
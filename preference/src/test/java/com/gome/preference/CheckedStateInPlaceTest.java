@@ -0,0 +1,159 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.support.v7.preference.PreferenceViewHolders;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checked state changes of both {@link SwitchPreference}s that keep the summary update the
+ * bound switch in place, without notifying the adapter or requesting a layout.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CheckedStateInPlaceTest {
+
+    private Context mContext;
+    private CountingParent mParent;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mParent = new CountingParent(mContext);
+        RowViewFactories.register(CountingSwitchPreference.class, OriginRowViewFactory.SWITCH);
+    }
+
+    @Test
+    public void toggleUpdatesSwitchWithoutLayout() {
+        final CountingSwitchPreference preference = new CountingSwitchPreference(mContext);
+        final GomeSwitch switchView = bind(preference);
+
+        preference.setChecked(true);
+        preference.setChecked(false);
+        preference.setChecked(true);
+
+        assertTrue(switchView.isChecked());
+        assertEquals(0, preference.mNotifications);
+        assertEquals(0, mParent.mLayoutRequests);
+    }
+
+    @Test
+    public void summaryChangeRebindsRow() {
+        final CountingSwitchPreference preference = new CountingSwitchPreference(mContext);
+        preference.setSummaryOn("On");
+        final GomeSwitch switchView = bind(preference);
+
+        preference.setChecked(true);
+
+        assertEquals(1, preference.mNotifications);
+        // Left to the adapter, which there is none of here.
+        assertFalse(switchView.isChecked());
+    }
+
+    @Test
+    public void rowBoundToAnotherPreferenceIsLeftAlone() {
+        final CountingSwitchPreference preference = new CountingSwitchPreference(mContext);
+        final GomeSwitch switchView = bind(preference);
+        new CountingSwitchPreference(mContext).getView(mParent.getChildAt(0), mParent);
+
+        preference.setChecked(true);
+
+        assertEquals(1, preference.mNotifications);
+        assertFalse(switchView.isChecked());
+    }
+
+    @Test
+    public void supportToggleUpdatesSwitchWithoutLayout() {
+        final CountingSupportSwitchPreference preference =
+                new CountingSupportSwitchPreference(mContext);
+        final View row = OriginRowViewFactory.SWITCH.createRow(mContext, mParent);
+        mParent.addView(row);
+        preference.onBindViewHolder(PreferenceViewHolders.create(row));
+        final GomeSwitch switchView = (GomeSwitch) row.findViewById(R.id.custom_switch_widget);
+        mParent.layoutAndReset();
+        preference.mNotifications = 0;
+
+        preference.setChecked(true);
+        preference.setChecked(false);
+        preference.setChecked(true);
+
+        assertTrue(switchView.isChecked());
+        assertEquals(0, preference.mNotifications);
+        assertEquals(0, mParent.mLayoutRequests);
+    }
+
+    private GomeSwitch bind(CountingSwitchPreference preference) {
+        final View row = preference.getView(null, mParent);
+        mParent.addView(row);
+        mParent.layoutAndReset();
+        preference.mNotifications = 0;
+        return (GomeSwitch) row.findViewById(R.id.custom_switch_widget);
+    }
+
+    static class CountingSwitchPreference extends SwitchPreference {
+
+        int mNotifications;
+
+        CountingSwitchPreference(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void notifyChanged() {
+            mNotifications++;
+            super.notifyChanged();
+        }
+    }
+
+    static class CountingSupportSwitchPreference
+            extends com.gome.preference.support.SwitchPreference {
+
+        int mNotifications;
+
+        CountingSupportSwitchPreference(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void notifyChanged(Object payload) {
+            mNotifications++;
+            super.notifyChanged(payload);
+        }
+    }
+
+    /**
+     * Counts the layout requests coming up from its rows.
+     */
+    private static class CountingParent extends FrameLayout {
+
+        int mLayoutRequests;
+
+        CountingParent(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            mLayoutRequests++;
+            super.requestLayout();
+        }
+
+        void layoutAndReset() {
+            measure(MeasureSpec.makeMeasureSpec(1080, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+            layout(0, 0, getMeasuredWidth(), getMeasuredHeight());
+            mLayoutRequests = 0;
+        }
+    }
+}
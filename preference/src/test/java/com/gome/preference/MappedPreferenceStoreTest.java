@@ -0,0 +1,179 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The entries of a {@link MappedPreferenceStore} survive reopening the file, removed and
+ * replaced entries stay dead, compaction drops them, and the values of a SharedPreferences file
+ * are migrated through a temp file on the first open.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class MappedPreferenceStoreTest {
+
+    private static final String NAME = "mapped_store_test";
+
+    private Context mContext;
+    private File mFile;
+    private MappedPreferenceStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.application;
+        mFile = new File(mContext.getFilesDir(), "entries.gpref");
+        mFile.delete();
+        mStore = new MappedPreferenceStore(mFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        mStore.putBoolean("boolean", true);
+        mStore.putInt("int", 42);
+        mStore.putLong("long", 1L << 40);
+        mStore.putFloat("float", 0.5f);
+        mStore.putString("string", "value");
+
+        reopen();
+
+        assertTrue(mStore.getBoolean("boolean", false));
+        assertEquals(42, mStore.getInt("int", 0));
+        assertEquals(1L << 40, mStore.getLong("long", 0));
+        assertEquals(0.5f, mStore.getFloat("float", 0), 0);
+        assertEquals("value", mStore.getString("string", null));
+        assertFalse(mStore.contains("missing"));
+    }
+
+    @Test
+    public void fixedSizeValuesAreUpdatedInPlace() throws IOException {
+        mStore.putBoolean("boolean", true);
+        final long length = mFile.length();
+
+        for (int i = 0; i < 1000; i++) {
+            mStore.putBoolean("boolean", i % 2 == 0);
+        }
+        reopen();
+
+        assertFalse(mStore.getBoolean("boolean", true));
+        assertEquals(length, mFile.length());
+    }
+
+    @Test
+    public void removedAndReplacedEntriesStayDead() throws IOException {
+        mStore.putString("removed", "value");
+        mStore.putString("grown", "short");
+        mStore.putString("grown", "a value too long for the room left by the first one");
+        mStore.putInt("retyped", 1);
+        mStore.putBoolean("retyped", true);
+        mStore.remove("removed");
+
+        reopen();
+
+        assertFalse(mStore.contains("removed"));
+        assertNull(mStore.getString("removed", null));
+        assertEquals("a value too long for the room left by the first one",
+                mStore.getString("grown", null));
+        assertTrue(mStore.getBoolean("retyped", false));
+        try {
+            mStore.getInt("retyped", 0);
+            fail("The dead int entry was read");
+        } catch (ClassCastException expected) {
+            // Only the boolean entry is live.
+        }
+    }
+
+    @Test
+    public void compactionDropsDeadEntries() throws IOException {
+        final char[] chars = new char[6000];
+        Arrays.fill(chars, 'x');
+        final String large = new String(chars);
+        for (int i = 0; i < 6; i++) {
+            mStore.putString("large_" + i, large);
+        }
+        final long length = mFile.length();
+
+        for (int i = 0; i < 4; i++) {
+            mStore.remove("large_" + i);
+        }
+
+        assertTrue(mFile.length() < length);
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+        reopen();
+        for (int i = 0; i < 4; i++) {
+            assertFalse(mStore.contains("large_" + i));
+        }
+        assertEquals(large, mStore.getString("large_4", null));
+        assertEquals(large, mStore.getString("large_5", null));
+    }
+
+    @Test
+    public void openMigratesSharedPreferencesOnce() throws IOException {
+        final SharedPreferences preferences =
+                mContext.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        preferences.edit().clear()
+                .putBoolean("boolean", true)
+                .putInt("int", 7)
+                .putLong("long", 8L)
+                .putFloat("float", 1.5f)
+                .putString("string", "migrated")
+                .commit();
+        final File file = new File(mContext.getFilesDir(), NAME + ".gpref");
+        file.delete();
+        // Left behind by an interrupted migration.
+        final File temp = new File(file.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        MappedPreferenceStore store = MappedPreferenceStore.open(mContext, NAME);
+        try {
+            assertTrue(store.getBoolean("boolean", false));
+            assertEquals(7, store.getInt("int", 0));
+            assertEquals(8L, store.getLong("long", 0));
+            assertEquals(1.5f, store.getFloat("float", 0), 0);
+            assertEquals("migrated", store.getString("string", null));
+        } finally {
+            store.close();
+        }
+        assertTrue(file.exists());
+        assertFalse(temp.exists());
+
+        preferences.edit().putBoolean("boolean", false).commit();
+        store = MappedPreferenceStore.open(mContext, NAME);
+        try {
+            // The store is not migrated again once it exists.
+            assertTrue(store.getBoolean("boolean", false));
+        } finally {
+            store.close();
+        }
+    }
+
+    private void reopen() throws IOException {
+        mStore.close();
+        mStore = new MappedPreferenceStore(mFile);
+    }
+}
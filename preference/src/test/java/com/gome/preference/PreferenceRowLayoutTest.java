@@ -0,0 +1,203 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.RelativeLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measure and layout passes of a {@link PreferenceRowLayout} row, compared to the nested
+ * layouts it replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PreferenceRowLayoutTest {
+
+    private static final int WIDTH = 1080;
+
+    private Context mContext;
+    private CountingView mIcon;
+    private CountingView mTitle;
+    private CountingView mSummary;
+    private CountingView mWidget;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mIcon = new CountingView(mContext, android.R.id.icon, 48, 48);
+        mTitle = new CountingView(mContext, android.R.id.title, 300, 40);
+        mSummary = new CountingView(mContext, android.R.id.summary, 200, 30);
+        mWidget = new CountingView(mContext, 0, 100, 50);
+    }
+
+    @Test
+    public void measuresAndLaysOutEachChildOnce() {
+        final View row = createRow();
+
+        measureAndLayout(row);
+
+        for (CountingView child : new CountingView[]{mIcon, mTitle, mSummary, mWidget}) {
+            assertEquals(1, child.mMeasures);
+            assertEquals(1, child.mLayouts);
+        }
+    }
+
+    @Test
+    public void nestedLayoutMeasuresTextsMoreThanOnce() {
+        final View row = createNestedRow();
+
+        measureAndLayout(row);
+
+        assertTrue(mTitle.mMeasures > 1);
+        assertTrue(mSummary.mMeasures > 1);
+        assertEquals(1, mTitle.mLayouts);
+    }
+
+    @Test
+    public void relayoutOnlyMeasuresChangedChildren() {
+        final View row = createRow();
+        measureAndLayout(row);
+        mTitle.reset();
+        mWidget.reset();
+
+        mTitle.requestLayout();
+        measureAndLayout(row);
+
+        assertEquals(1, mTitle.mMeasures);
+        // Measured with the same spec as before, so it is not measured again at all.
+        assertEquals(0, mWidget.mMeasures);
+    }
+
+    @Test
+    public void laysOutFromStartToEnd() {
+        final PreferenceRowLayout row = createRow();
+        final ViewGroup.MarginLayoutParams titleParams =
+                (ViewGroup.MarginLayoutParams) mTitle.getLayoutParams();
+        titleParams.leftMargin = 15;
+
+        measureAndLayout(row);
+
+        assertEquals(0, mIcon.getLeft());
+        assertEquals(48 + 15, mTitle.getLeft());
+        assertEquals(mTitle.getBottom(), mSummary.getTop());
+        assertEquals(WIDTH, mWidget.getRight());
+        // The text block and the widget are centered vertically.
+        assertEquals(row.getHeight() - mSummary.getBottom(), mTitle.getTop());
+        assertEquals((row.getHeight() - 50) / 2, mWidget.getTop());
+    }
+
+    @Test
+    public void goneChildrenTakeNoSpace() {
+        final PreferenceRowLayout row = createRow();
+        mIcon.setVisibility(View.GONE);
+        mWidget.setVisibility(View.GONE);
+
+        measureAndLayout(row);
+
+        assertEquals(0, mIcon.mMeasures);
+        assertEquals(0, mTitle.getLeft());
+        assertEquals(70, row.getMeasuredHeight());
+    }
+
+    @Test
+    public void dividerAddsToTheHeight() {
+        final PreferenceRowLayout row = createRow();
+        row.setDividerHeight(1);
+
+        measureAndLayout(row);
+
+        assertEquals(71, row.getMeasuredHeight());
+    }
+
+    private PreferenceRowLayout createRow() {
+        final PreferenceRowLayout row = new PreferenceRowLayout(mContext);
+        row.addView(mIcon);
+        row.addView(mTitle);
+        row.addView(mSummary);
+        final FrameLayout widgetFrame = new FrameLayout(mContext);
+        widgetFrame.setId(android.R.id.widget_frame);
+        widgetFrame.addView(mWidget);
+        row.addView(widgetFrame);
+        return row;
+    }
+
+    /**
+     * The tree {@code origin_preference} used to inflate.
+     */
+    private View createNestedRow() {
+        final LinearLayout row = new LinearLayout(mContext);
+        final FrameLayout iconFrame = new FrameLayout(mContext);
+        iconFrame.addView(mIcon);
+        row.addView(iconFrame, new LinearLayout.LayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+
+        final RelativeLayout texts = new RelativeLayout(mContext);
+        texts.addView(mTitle, new RelativeLayout.LayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+        final RelativeLayout.LayoutParams summaryParams =
+                new RelativeLayout.LayoutParams(WRAP_CONTENT, WRAP_CONTENT);
+        summaryParams.addRule(RelativeLayout.ALIGN_START, android.R.id.title);
+        summaryParams.addRule(RelativeLayout.BELOW, android.R.id.title);
+        texts.addView(mSummary, summaryParams);
+        row.addView(texts, new LinearLayout.LayoutParams(0, WRAP_CONTENT, 1));
+
+        final LinearLayout widgetFrame = new LinearLayout(mContext);
+        widgetFrame.setOrientation(LinearLayout.VERTICAL);
+        widgetFrame.addView(mWidget);
+        row.addView(widgetFrame, new LinearLayout.LayoutParams(WRAP_CONTENT, MATCH_PARENT));
+        return row;
+    }
+
+    private static void measureAndLayout(View row) {
+        row.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        row.layout(0, 0, row.getMeasuredWidth(), row.getMeasuredHeight());
+    }
+
+    /**
+     * A fixed size view counting its measure and layout passes.
+     */
+    private static class CountingView extends View {
+
+        private final int mWidth;
+        private final int mHeight;
+        int mMeasures;
+        int mLayouts;
+
+        CountingView(Context context, int id, int width, int height) {
+            super(context);
+            setId(id);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasures++;
+            setMeasuredDimension(resolveSize(mWidth, widthMeasureSpec),
+                    resolveSize(mHeight, heightMeasureSpec));
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mLayouts++;
+        }
+
+        void reset() {
+            mMeasures = 0;
+            mLayouts = 0;
+        }
+    }
+}
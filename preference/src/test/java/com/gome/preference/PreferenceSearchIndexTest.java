@@ -0,0 +1,108 @@
+package com.gome.preference;
+
+import android.util.Xml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link PreferenceSearchIndex} matches every word of a query as a prefix, returns the
+ * preferences matching all of them with the title matches first, and reports the nested screen
+ * a preference declared in XML is on.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PreferenceSearchIndexTest {
+
+    private static final String XML = "<PreferenceScreen"
+            + " xmlns:android=\"http://schemas.android.com/apk/res/android\">"
+            + "<PreferenceCategory android:key=\"pref_key_storage\" android:title=\"Storage\">"
+            + "<SwitchPreference android:key=\"pref_key_auto_delete\""
+            + " android:title=\"Delete old messages\" />"
+            + "</PreferenceCategory>"
+            + "<PreferenceScreen android:key=\"pref_key_advanced\" android:title=\"Advanced\">"
+            + "<SwitchPreference android:key=\"pref_key_delivery\""
+            + " android:title=\"Delivery reports\" />"
+            + "</PreferenceScreen>"
+            + "<Preference android:key=\"pref_key_about\" android:title=\"About\" />"
+            + "</PreferenceScreen>";
+
+    private PreferenceSearchIndex mIndex;
+
+    @Before
+    public void setUp() throws XmlPullParserException {
+        final XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(new StringReader(XML));
+        mIndex = new PreferenceSearchIndex.Builder(RuntimeEnvironment.application)
+                .addScreen("messages", parser)
+                .add("sounds", null, "pref_key_tone", "Notification tone",
+                        "Played for delivered messages")
+                .add("sounds", null, "pref_key_vibrate", "Vibrate", "When a message arrives")
+                .build();
+    }
+
+    @Test
+    public void wordsMatchAsPrefix() {
+        assertEquals(7, mIndex.size());
+        assertKeys(mIndex.query("vib"), "pref_key_vibrate");
+        assertKeys(mIndex.query("DELIV"), "pref_key_delivery", "pref_key_tone");
+        assertKeys(mIndex.query("mess"), "pref_key_auto_delete", "pref_key_tone",
+                "pref_key_vibrate");
+        assertTrue(mIndex.query("ibrate").isEmpty());
+        assertTrue(mIndex.query("  ").isEmpty());
+    }
+
+    @Test
+    public void everyWordHasToMatch() {
+        assertKeys(mIndex.query("delete old"), "pref_key_auto_delete");
+        assertKeys(mIndex.query("mess deliv"), "pref_key_tone");
+        assertTrue(mIndex.query("delete vibrate").isEmpty());
+        assertTrue(mIndex.query("about missing").isEmpty());
+    }
+
+    @Test
+    public void titleMatchesComeFirst() {
+        // The auto delete switch only matches through its key, although it was added first.
+        assertKeys(mIndex.query("a"), "pref_key_advanced", "pref_key_about",
+                "pref_key_auto_delete", "pref_key_vibrate");
+        assertKeys(mIndex.query("deliver"), "pref_key_delivery", "pref_key_tone");
+    }
+
+    @Test
+    public void nestedScreenIsTheParent() {
+        final PreferenceSearchIndex.Result delivery = mIndex.query("delivery").get(0);
+        assertEquals("messages", delivery.getScreen());
+        assertEquals("pref_key_advanced", delivery.getParentKey());
+        assertEquals("Delivery reports", delivery.getTitle());
+
+        final PreferenceSearchIndex.Result autoDelete = mIndex.query("old").get(0);
+        assertEquals("pref_key_auto_delete", autoDelete.getKey());
+        assertNull(autoDelete.getParentKey());
+
+        final PreferenceSearchIndex.Result advanced = mIndex.query("advanced").get(0);
+        assertNull(advanced.getParentKey());
+
+        final PreferenceSearchIndex.Result about = mIndex.query("about").get(0);
+        assertNull(about.getParentKey());
+    }
+
+    private static void assertKeys(List<PreferenceSearchIndex.Result> results, String... keys) {
+        assertEquals(results.toString(), keys.length, results.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], results.get(i).getKey());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.gome.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.gome.preference.support.SwitchPreference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Buffered toggles of a {@link TwoStatePreference} reach the SharedPreferences in one edit on
+ * the next flush, and are read back from the {@link PreferenceWriteBuffer} until then.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class PreferenceWriteBufferTest {
+
+    private static final String KEY = "pref_key_buffered";
+
+    private Context mContext;
+    private SharedPreferences mSharedPreferences;
+    private PreferenceScreen mScreen;
+    private int mChanges;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    mChanges++;
+                }
+            };
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        mSharedPreferences = manager.getSharedPreferences();
+        mSharedPreferences.edit().clear().commit();
+        mSharedPreferences.registerOnSharedPreferenceChangeListener(mListener);
+        mScreen = manager.createPreferenceScreen(mContext);
+        // The flush only runs when the test asks for it.
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_INTERVAL);
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_IMMEDIATE);
+        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(mListener);
+    }
+
+    @Test
+    public void togglesAreCoalescedUntilTheFlush() {
+        final SwitchPreference preference = createPreference();
+
+        preference.setChecked(true);
+        preference.setChecked(false);
+        preference.setChecked(true);
+
+        assertFalse(mSharedPreferences.contains(KEY));
+        assertTrue(PreferenceWriteBuffer.hasPendingBoolean(mSharedPreferences, KEY));
+        assertTrue(PreferenceWriteBuffer.getPendingBoolean(mSharedPreferences, KEY, false));
+        assertEquals(0, mChanges);
+
+        PreferenceWriteBuffer.flush();
+
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+        assertFalse(PreferenceWriteBuffer.hasPendingBoolean(mSharedPreferences, KEY));
+        assertEquals(1, mChanges);
+    }
+
+    @Test
+    public void flushWithoutChangesNotifiesNoListener() {
+        mSharedPreferences.edit().putBoolean(KEY, true).commit();
+        mChanges = 0;
+        final SwitchPreference preference = createPreference();
+
+        preference.setChecked(false);
+        preference.setChecked(true);
+        PreferenceWriteBuffer.flush();
+
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+        assertEquals(0, mChanges);
+    }
+
+    @Test
+    public void transactionFlushesWhenItEnds() {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_IMMEDIATE);
+        final SwitchPreference preference = createPreference();
+
+        PreferenceWriteBuffer.beginTransaction();
+        PreferenceWriteBuffer.beginTransaction();
+        preference.setChecked(true);
+        PreferenceWriteBuffer.endTransaction();
+        assertFalse(mSharedPreferences.contains(KEY));
+        PreferenceWriteBuffer.endTransaction();
+
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+        assertEquals(1, mChanges);
+    }
+
+    @Test
+    public void scheduledWriteRunsOncePerFlush() {
+        final int[] writes = new int[1];
+        final PreferenceWriteBuffer.PendingWrite write = new PreferenceWriteBuffer.PendingWrite() {
+            @Override
+            public void write() {
+                writes[0]++;
+            }
+        };
+
+        PreferenceWriteBuffer.schedule(write);
+        PreferenceWriteBuffer.schedule(write);
+        PreferenceWriteBuffer.schedule(write);
+        assertEquals(0, writes[0]);
+
+        PreferenceWriteBuffer.flush();
+        PreferenceWriteBuffer.flush();
+        assertEquals(1, writes[0]);
+    }
+
+    private SwitchPreference createPreference() {
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(KEY);
+        mScreen.addPreference(preference);
+        return preference;
+    }
+}
@@ -0,0 +1,163 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.gome.preference.GomeSwitch;
+import com.gome.preference.R;
+import com.gome.preference.RowViewFactories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link CustomPreferenceGroupAdapter} showing a {@link VirtualSwitchList} lists one row per
+ * item, keeps the positions of the preferences around it, gives every item row its own stable
+ * id, and writes a toggle of an item row back to the data source.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CustomPreferenceGroupAdapterTest {
+
+    private Context mContext;
+    private CustomPreference mFirst;
+    private VirtualSwitchList mList;
+    private CustomPreference mLast;
+    private ListDataSource mDataSource;
+    private CustomPreferenceGroupAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        RowViewFactories.registerDefaults();
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        final PreferenceScreen screen = manager.createPreferenceScreen(mContext);
+        manager.setPreferences(screen);
+
+        mFirst = createPreference("pref_key_first");
+        screen.addPreference(mFirst);
+        mDataSource = new ListDataSource(3);
+        mList = new VirtualSwitchList(mContext);
+        mList.setKey("pref_key_list");
+        mList.setDataSource(mDataSource);
+        screen.addPreference(mList);
+        mLast = createPreference("pref_key_last");
+        screen.addPreference(mLast);
+
+        mAdapter = new CustomPreferenceGroupAdapter(screen);
+    }
+
+    @Test
+    public void itemRowsAreListedBetweenThePreferences() {
+        assertEquals(5, mAdapter.getItemCount());
+        assertEquals(0, mAdapter.getPreferenceAdapterPosition(mFirst));
+        assertEquals(1, mAdapter.getPreferenceAdapterPosition(mList));
+        assertEquals(4, mAdapter.getPreferenceAdapterPosition(mLast));
+        assertEquals(4, mAdapter.getPreferenceAdapterPosition("pref_key_last"));
+        assertEquals(mLast, mAdapter.getItem(4));
+    }
+
+    @Test
+    public void positionsFollowTheItemCount() {
+        mDataSource.mChecked.add(false);
+        mDataSource.mChecked.add(false);
+        mList.notifyDataSetChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(7, mAdapter.getItemCount());
+        assertEquals(6, mAdapter.getPreferenceAdapterPosition(mLast));
+        assertEquals(mLast, mAdapter.getItem(6));
+    }
+
+    @Test
+    public void everyRowHasItsOwnId() {
+        final HashSet<Long> ids = new HashSet<>();
+        for (int i = 0; i < mAdapter.getItemCount(); i++) {
+            assertTrue(ids.add(mAdapter.getItemId(i)));
+        }
+        assertFalse(ids.contains(RecyclerView.NO_ID));
+    }
+
+    @Test
+    public void clickTogglesTheItemThroughTheDataSource() {
+        final RecyclerView recyclerView = new RecyclerView(mContext);
+        recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        recyclerView.setAdapter(mAdapter);
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+
+        final View row = recyclerView.findViewHolderForAdapterPosition(2).itemView;
+        final GomeSwitch switchView = (GomeSwitch) row.findViewById(R.id.custom_switch_widget);
+        assertFalse(switchView.isChecked());
+
+        row.performClick();
+
+        assertEquals(1, mDataSource.mLastSetIndex);
+        assertTrue(mDataSource.isChecked(1));
+        assertFalse(mDataSource.isChecked(0));
+        assertTrue(switchView.isChecked());
+    }
+
+    private CustomPreference createPreference(String key) {
+        final CustomPreference preference = new CustomPreference(mContext);
+        preference.setKey(key);
+        preference.setPersistent(false);
+        return preference;
+    }
+
+    private static class ListDataSource implements VirtualSwitchList.DataSource {
+        final ArrayList<Boolean> mChecked = new ArrayList<>();
+        int mLastSetIndex = -1;
+
+        ListDataSource(int count) {
+            for (int i = 0; i < count; i++) {
+                mChecked.add(false);
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mChecked.size();
+        }
+
+        @Override
+        public CharSequence getTitle(int index) {
+            return "Item " + index;
+        }
+
+        @Nullable
+        @Override
+        public CharSequence getSummary(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isChecked(int index) {
+            return mChecked.get(index);
+        }
+
+        @Override
+        public void setChecked(int index, boolean checked) {
+            mLastSetIndex = index;
+            mChecked.set(index, checked);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.v7.preference.CheckBoxPreference;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link CustomPreference} reaches the dependents the support library registered for it,
+ * whatever their class and whenever they were added, and follows {@code setDependency}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class DependencyBatchTest {
+
+    private Context mContext;
+    private PreferenceScreen mScreen;
+    private SwitchPreference mFirst;
+    private SwitchPreference mSecond;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        manager.getSharedPreferences().edit().clear().commit();
+        mScreen = manager.createPreferenceScreen(mContext);
+        manager.setPreferences(mScreen);
+        mScreen.onAttached();
+        mFirst = createSwitch("pref_key_first");
+        mSecond = createSwitch("pref_key_second");
+    }
+
+    @Test
+    public void dependentOfAnyClassIsUpdated() {
+        final CheckBoxPreference dependent = createDependent("pref_key_first");
+
+        mFirst.setChecked(false);
+        assertFalse(dependent.isEnabled());
+
+        mFirst.setChecked(true);
+        assertTrue(dependent.isEnabled());
+    }
+
+    @Test
+    public void newDependencyIsFollowed() {
+        final CheckBoxPreference dependent = createDependent("pref_key_first");
+
+        dependent.setDependency("pref_key_second");
+        mFirst.setChecked(false);
+        assertTrue(dependent.isEnabled());
+
+        mSecond.setChecked(false);
+        assertFalse(dependent.isEnabled());
+    }
+
+    private SwitchPreference createSwitch(String key) {
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(key);
+        preference.setPersistent(false);
+        mScreen.addPreference(preference);
+        preference.setChecked(true);
+        return preference;
+    }
+
+    private CheckBoxPreference createDependent(String dependency) {
+        final CheckBoxPreference preference = new CheckBoxPreference(mContext);
+        preference.setKey("pref_key_dependent");
+        preference.setPersistent(false);
+        mScreen.addPreference(preference);
+        preference.setDependency(dependency);
+        return preference;
+    }
+}
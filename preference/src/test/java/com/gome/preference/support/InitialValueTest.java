@@ -0,0 +1,128 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.gome.preference.MappedPreferenceStore;
+import com.gome.preference.PreferenceWriteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link TwoStatePreference} attached again restores the state it persisted, also when that
+ * state is only in its {@link com.gome.preference.PreferenceDataStore} or still waiting in the
+ * {@link PreferenceWriteBuffer}, instead of taking its default value again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class InitialValueTest {
+
+    private static final String KEY = "pref_key_initial";
+
+    private Context mContext;
+    private SharedPreferences mSharedPreferences;
+    private File mFile;
+    private MappedPreferenceStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.application;
+        mSharedPreferences = new PreferenceManager(mContext).getSharedPreferences();
+        mSharedPreferences.edit().clear().commit();
+        mFile = new File(mContext.getFilesDir(), "initial_value.gpref");
+        mFile.delete();
+        mStore = new MappedPreferenceStore(mFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_IMMEDIATE);
+        mStore.close();
+    }
+
+    @Test
+    public void dataStoreValueSurvivesReattaching() throws IOException {
+        final SwitchPreference preference = createPreference(true);
+        preference.setPreferenceDataStore(mStore);
+        addToScreen(preference);
+        preference.setChecked(false);
+        mStore.close();
+        mStore = new MappedPreferenceStore(mFile);
+
+        final SwitchPreference reattached = createPreference(true);
+        reattached.setPreferenceDataStore(mStore);
+        addToScreen(reattached);
+
+        assertFalse(reattached.isChecked());
+        assertFalse(mStore.getBoolean(KEY, true));
+        assertFalse(mSharedPreferences.contains(KEY));
+    }
+
+    @Test
+    public void dataStoreValueIsRestoredWithoutDefault() {
+        mStore.putBoolean(KEY, true);
+
+        final SwitchPreference preference = createPreference(null);
+        preference.setPreferenceDataStore(mStore);
+        addToScreen(preference);
+
+        assertTrue(preference.isChecked());
+    }
+
+    @Test
+    public void bufferedValueSurvivesReattaching() {
+        // Nothing is flushed unless the test asks for it.
+        PreferenceWriteBuffer.setMode(PreferenceWriteBuffer.MODE_INTERVAL);
+        final SwitchPreference preference = attach(true);
+        preference.setChecked(false);
+        assertFalse(mSharedPreferences.contains(KEY));
+
+        final SwitchPreference reattached = attach(true);
+
+        assertFalse(reattached.isChecked());
+        PreferenceWriteBuffer.flush();
+        assertFalse(mSharedPreferences.getBoolean(KEY, true));
+    }
+
+    @Test
+    public void defaultValueIsSetWithoutPersistedValue() {
+        final SwitchPreference preference = attach(true);
+
+        assertTrue(preference.isChecked());
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+    }
+
+    private SwitchPreference attach(Boolean defaultValue) {
+        final SwitchPreference preference = createPreference(defaultValue);
+        addToScreen(preference);
+        return preference;
+    }
+
+    private SwitchPreference createPreference(Boolean defaultValue) {
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(KEY);
+        preference.setDefaultValue(defaultValue);
+        return preference;
+    }
+
+    private void addToScreen(SwitchPreference preference) {
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        final PreferenceScreen screen = manager.createPreferenceScreen(mContext);
+        manager.setPreferences(screen);
+        screen.addPreference(preference);
+    }
+}
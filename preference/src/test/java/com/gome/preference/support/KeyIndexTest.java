@@ -0,0 +1,134 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.v7.preference.PreferenceCategory;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The {@link KeyIndex} of a manager follows its hierarchy: preferences are indexed when they
+ * are attached, dropped when they, their group or their screen are detached, indexed again
+ * under a new key, and a duplicate key is left to the hierarchy walk, which finds the first
+ * preference with it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class KeyIndexTest {
+
+    private Context mContext;
+    private PreferenceManager mManager;
+    private PreferenceScreen mScreen;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mManager = new PreferenceManager(mContext);
+        mScreen = mManager.createPreferenceScreen(mContext);
+        mManager.setPreferences(mScreen);
+        mScreen.onAttached();
+    }
+
+    @Test
+    public void attachedPreferencesAreIndexed() {
+        final CustomPreference preference = createPreference("pref_key_attached");
+        assertNull(KeyIndex.get(mManager).find("pref_key_attached"));
+
+        mScreen.addPreference(preference);
+
+        assertSame(preference, KeyIndex.get(mManager).find("pref_key_attached"));
+        assertSame(preference, KeyIndex.findPreference(mManager, "pref_key_attached"));
+    }
+
+    @Test
+    public void removedPreferencesAreDropped() {
+        final CustomPreference preference = createPreference("pref_key_removed");
+        mScreen.addPreference(preference);
+
+        mScreen.removePreference(preference);
+
+        assertNull(KeyIndex.get(mManager).find("pref_key_removed"));
+        assertNull(KeyIndex.findPreference(mManager, "pref_key_removed"));
+    }
+
+    @Test
+    public void preferencesOfRemovedGroupAreDropped() {
+        final PreferenceCategory category = new PreferenceCategory(mContext);
+        mScreen.addPreference(category);
+        category.addPreference(createPreference("pref_key_child_0"));
+        category.addPreference(createPreference("pref_key_child_1"));
+        assertEquals(2, KeyIndex.get(mManager).size());
+
+        mScreen.removePreference(category);
+
+        assertNull(KeyIndex.get(mManager).find("pref_key_child_0"));
+        assertNull(KeyIndex.get(mManager).find("pref_key_child_1"));
+        assertEquals(0, KeyIndex.get(mManager).size());
+    }
+
+    @Test
+    public void newKeyIsIndexedInsteadOfTheOldOne() {
+        final CustomPreference preference = createPreference("pref_key_old");
+        mScreen.addPreference(preference);
+
+        preference.setKey("pref_key_new");
+
+        assertNull(KeyIndex.get(mManager).find("pref_key_old"));
+        assertSame(preference, KeyIndex.get(mManager).find("pref_key_new"));
+    }
+
+    @Test
+    public void duplicateKeyFindsTheFirstInHierarchyOrder() {
+        final CustomPreference first = createPreference("pref_key_duplicate");
+        final CustomPreference second = createPreference("pref_key_duplicate");
+        mScreen.addPreference(first);
+        mScreen.addPreference(second);
+
+        assertNull(KeyIndex.get(mManager).find("pref_key_duplicate"));
+        assertSame(first, KeyIndex.findPreference(mManager, "pref_key_duplicate"));
+        assertSame(mManager.findPreference("pref_key_duplicate"),
+                KeyIndex.findPreference(mManager, "pref_key_duplicate"));
+
+        // Still walked once one of them is gone.
+        mScreen.removePreference(first);
+        assertSame(second, KeyIndex.findPreference(mManager, "pref_key_duplicate"));
+    }
+
+    @Test
+    public void replacedScreenLeavesTheNewPreferencesFound() {
+        final CustomPreference old = createPreference("pref_key_screen");
+        final CustomPreference dropped = createPreference("pref_key_only_old");
+        mScreen.addPreference(old);
+        mScreen.addPreference(dropped);
+        // Built while the old screen is still shown.
+        final PreferenceScreen screen = mManager.createPreferenceScreen(mContext);
+        final CustomPreference replacement = createPreference("pref_key_screen");
+        screen.addPreference(replacement);
+
+        mManager.setPreferences(screen);
+        screen.onAttached();
+
+        // Both screens had the key for a moment, it is walked from then on.
+        assertSame(replacement, KeyIndex.findPreference(mManager, "pref_key_screen"));
+        assertNull(KeyIndex.get(mManager).find("pref_key_only_old"));
+        assertNull(KeyIndex.findPreference(mManager, "pref_key_only_old"));
+        assertEquals(0, KeyIndex.get(mManager).size());
+    }
+
+    private CustomPreference createPreference(String key) {
+        final CustomPreference preference = new CustomPreference(mContext);
+        preference.setKey(key);
+        preference.setPersistent(false);
+        return preference;
+    }
+}
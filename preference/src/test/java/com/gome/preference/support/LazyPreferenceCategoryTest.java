@@ -0,0 +1,153 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The rows of a {@link LazyPreferenceCategory} shown by a {@link CustomPreferenceGroupAdapter}
+ * stay descriptors until the adapter lays them out or they are looked up by key, which creates
+ * exactly the row asked for, and the positions of the rows follow removals.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class LazyPreferenceCategoryTest {
+
+    private static final int ROWS = 20;
+    // The row before the category and the category itself.
+    private static final int FIRST_ROW = 2;
+
+    private Context mContext;
+    private PreferenceScreen mScreen;
+    private LazyPreferenceCategory mCategory;
+    private CustomPreference mLast;
+    private CustomPreferenceGroupAdapter mAdapter;
+    private int mMaterialized;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        mScreen = manager.createPreferenceScreen(mContext);
+        manager.setPreferences(mScreen);
+
+        mScreen.addPreference(createPreference("pref_key_first"));
+        mCategory = new LazyPreferenceCategory(mContext);
+        mCategory.setOnMaterializeListener(new LazyPreferenceCategory.OnMaterializeListener() {
+            @Override
+            public void onMaterialize(LazyPreferenceCategory category, Preference preference,
+                                      PreferenceDescriptor descriptor) {
+                mMaterialized++;
+                preference.setPersistent(false);
+            }
+        });
+        mScreen.addPreference(mCategory);
+        for (int i = 0; i < ROWS; i++) {
+            mCategory.addDescriptor(new PreferenceDescriptor(key(i), SwitchPreference.class, 0));
+        }
+        mLast = createPreference("pref_key_last");
+        mScreen.addPreference(mLast);
+
+        mAdapter = new CustomPreferenceGroupAdapter(mScreen);
+    }
+
+    @Test
+    public void unboundRowsStayDescriptors() {
+        assertEquals(FIRST_ROW + ROWS + 1, mAdapter.getItemCount());
+        assertEquals(FIRST_ROW + 5, mAdapter.getPreferenceAdapterPosition(key(5)));
+        assertEquals(FIRST_ROW + ROWS, mAdapter.getPreferenceAdapterPosition(mLast));
+
+        assertEquals(0, mMaterialized);
+        for (int i = 0; i < ROWS; i++) {
+            assertNull(mCategory.peekPreference(i));
+        }
+    }
+
+    @Test
+    public void laidOutRowIsCreatedAndTracked() {
+        final Preference preference = mAdapter.getItem(FIRST_ROW + 5);
+
+        assertEquals(1, mMaterialized);
+        assertEquals(key(5), preference.getKey());
+        assertSame(preference, mCategory.peekPreference(5));
+        assertSame(preference, mAdapter.getItem(FIRST_ROW + 5));
+        assertEquals(1, mMaterialized);
+        assertEquals(FIRST_ROW + 5, mAdapter.getPreferenceAdapterPosition(preference));
+
+        final int[] changed = {RecyclerView.NO_POSITION};
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                changed[0] = positionStart;
+            }
+        });
+        ((SwitchPreference) preference).setChecked(true);
+        assertEquals(FIRST_ROW + 5, changed[0]);
+    }
+
+    @Test
+    public void lookupByKeyCreatesExactlyOneRow() {
+        final Preference preference = mScreen.findPreference(key(9));
+
+        assertEquals(key(9), preference.getKey());
+        assertEquals(1, mMaterialized);
+        assertSame(preference, mCategory.peekPreference(9));
+        for (int i = 0; i < ROWS; i++) {
+            if (i != 9) {
+                assertNull(mCategory.peekPreference(i));
+            }
+        }
+
+        assertSame(preference, mScreen.findPreference(key(9)));
+        assertEquals(1, mMaterialized);
+        assertNull(mScreen.findPreference("pref_key_missing"));
+        assertEquals(1, mMaterialized);
+    }
+
+    @Test
+    public void removalShiftsRowsAndPositions() {
+        final Preference removed = mCategory.materialize(3);
+        final Preference next = mCategory.materialize(4);
+
+        mCategory.removePreference(removed);
+
+        assertEquals(ROWS - 1, mCategory.getDescriptorCount());
+        assertEquals(key(4), mCategory.getDescriptor(3).getKey());
+        assertSame(next, mCategory.peekPreference(3));
+        assertNull(mCategory.peekPreference(4));
+
+        // The adapter lists the rows again on the next loop.
+        ShadowLooper.idleMainLooper();
+        assertEquals(FIRST_ROW + ROWS, mAdapter.getItemCount());
+        assertEquals(FIRST_ROW + 3, mAdapter.getPreferenceAdapterPosition(next));
+        assertEquals(FIRST_ROW + 4, mAdapter.getPreferenceAdapterPosition(key(5)));
+        assertEquals(FIRST_ROW + ROWS - 1, mAdapter.getPreferenceAdapterPosition(mLast));
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getPreferenceAdapterPosition(removed));
+        assertEquals(2, mMaterialized);
+    }
+
+    private CustomPreference createPreference(String key) {
+        final CustomPreference preference = new CustomPreference(mContext);
+        preference.setKey(key);
+        preference.setPersistent(false);
+        return preference;
+    }
+
+    private static String key(int index) {
+        return "pref_key_lazy_" + index;
+    }
+}
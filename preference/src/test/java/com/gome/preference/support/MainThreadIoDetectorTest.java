@@ -0,0 +1,195 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.gome.preference.MainThreadIoDetector;
+import com.gome.preference.PreferenceDataStore;
+import com.gome.preference.PreferenceWriteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Only the persistence calls of a {@link TwoStatePreference} that can reach the disk are
+ * recorded by the {@link MainThreadIoDetector}, each once.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class MainThreadIoDetectorTest {
+
+    private static final String KEY = "pref_key_io";
+
+    private Context mContext;
+    private SharedPreferences mSharedPreferences;
+    private PreferenceScreen mScreen;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        mSharedPreferences = manager.getSharedPreferences();
+        mSharedPreferences.edit().clear().commit();
+        mScreen = manager.createPreferenceScreen(mContext);
+        MainThreadIoDetector.clear();
+    }
+
+    @After
+    public void tearDown() {
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_OFF);
+        MainThreadIoDetector.clear();
+    }
+
+    @Test
+    public void dataStoreTogglesPassAssertMode() {
+        final SwitchPreference preference = createPreference();
+        preference.setPreferenceDataStore(new MemoryDataStore());
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+
+        preference.setChecked(true);
+        preference.setChecked(false);
+        preference.setChecked(true);
+
+        assertTrue(preference.isChecked());
+        assertTrue(MainThreadIoDetector.getViolations().isEmpty());
+    }
+
+    @Test
+    public void bufferedTogglesPassAssertMode() {
+        final SwitchPreference preference = createPreference();
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+
+        PreferenceWriteBuffer.beginTransaction();
+        try {
+            preference.setChecked(true);
+            preference.setChecked(false);
+            preference.setChecked(true);
+            assertTrue(MainThreadIoDetector.getViolations().isEmpty());
+        } finally {
+            // The flush writes the file.
+            MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_RECORD);
+            PreferenceWriteBuffer.endTransaction();
+        }
+
+        final List<MainThreadIoDetector.Violation> violations =
+                MainThreadIoDetector.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals(MainThreadIoDetector.WRITE, violations.get(0).getOperation());
+        assertNull(violations.get(0).getKey());
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+    }
+
+    @Test
+    public void immediateWriteIsRecordedOnce() {
+        final SwitchPreference preference = createPreference();
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_RECORD);
+
+        preference.setChecked(true);
+
+        final List<MainThreadIoDetector.Violation> violations =
+                MainThreadIoDetector.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals(MainThreadIoDetector.WRITE, violations.get(0).getOperation());
+        assertEquals(KEY, violations.get(0).getKey());
+    }
+
+    @Test
+    public void assertModeThrowsAfterTheWrite() {
+        final SwitchPreference preference = createPreference();
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+
+        try {
+            preference.setChecked(true);
+            fail("The immediate write was not reported");
+        } catch (IllegalStateException expected) {
+            // The violation.
+        }
+
+        assertTrue(mSharedPreferences.getBoolean(KEY, false));
+        assertEquals(1, MainThreadIoDetector.getViolations().size());
+    }
+
+    @Test
+    public void coldAttachIsReported() {
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        // Not read by anything yet.
+        manager.setSharedPreferencesName("main_thread_io_cold");
+        final PreferenceScreen screen = manager.createPreferenceScreen(mContext);
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(KEY);
+        preference.setDefaultValue(true);
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+
+        try {
+            screen.addPreference(preference);
+            fail("The initial value read was not reported");
+        } catch (IllegalStateException expected) {
+            // The violation.
+        }
+
+        final List<MainThreadIoDetector.Violation> violations =
+                MainThreadIoDetector.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals(MainThreadIoDetector.READ, violations.get(0).getOperation());
+        assertEquals(KEY, violations.get(0).getKey());
+    }
+
+    @Test
+    public void dataStoreAttachPassesAssertMode() {
+        final MemoryDataStore dataStore = new MemoryDataStore();
+        dataStore.putBoolean(KEY, true);
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(KEY);
+        preference.setDefaultValue(false);
+        preference.setPreferenceDataStore(dataStore);
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_ASSERT);
+
+        mScreen.addPreference(preference);
+
+        assertTrue(preference.isChecked());
+        assertTrue(MainThreadIoDetector.getViolations().isEmpty());
+    }
+
+    private SwitchPreference createPreference() {
+        final SwitchPreference preference = new SwitchPreference(mContext);
+        preference.setKey(KEY);
+        mScreen.addPreference(preference);
+        return preference;
+    }
+
+    private static class MemoryDataStore extends PreferenceDataStore {
+
+        private final HashMap<String, Boolean> mValues = new HashMap<>();
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+            mValues.put(key, value);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            final Boolean value = mValues.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.gome.preference.support;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+import android.support.v7.widget.RecyclerView;
+
+import com.gome.preference.MainThreadIoDetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link TwoStateBatch} over many switches persists them in a single write and refreshes
+ * the {@link CustomPreferenceGroupAdapter} showing them with a single range change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class TwoStateBatchTest {
+
+    private static final int COUNT = 50;
+
+    private Context mContext;
+    private SharedPreferences mSharedPreferences;
+    private PreferenceScreen mScreen;
+    private CustomPreferenceGroupAdapter mAdapter;
+    private CountingObserver mObserver;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager manager = new PreferenceManager(mContext);
+        mSharedPreferences = manager.getSharedPreferences();
+        mSharedPreferences.edit().clear().commit();
+        mScreen = manager.createPreferenceScreen(mContext);
+        manager.setPreferences(mScreen);
+        for (int i = 0; i < COUNT; i++) {
+            final SwitchPreference preference = new SwitchPreference(mContext);
+            preference.setKey(key(i));
+            mScreen.addPreference(preference);
+        }
+        mAdapter = new CustomPreferenceGroupAdapter(mScreen);
+        mObserver = new CountingObserver();
+        mAdapter.registerAdapterDataObserver(mObserver);
+        MainThreadIoDetector.clear();
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_RECORD);
+    }
+
+    @After
+    public void tearDown() {
+        MainThreadIoDetector.setMode(MainThreadIoDetector.MODE_OFF);
+        MainThreadIoDetector.clear();
+    }
+
+    @Test
+    public void batchWritesOnceAndRefreshesOnce() {
+        final HashMap<String, Boolean> values = new HashMap<>();
+        for (int i = 0; i < COUNT; i++) {
+            values.put(key(i), true);
+        }
+
+        assertEquals(COUNT, TwoStateBatch.apply(mScreen, values));
+
+        // Only the flush at the end of the batch touches the SharedPreferences.
+        final List<MainThreadIoDetector.Violation> violations =
+                MainThreadIoDetector.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals(MainThreadIoDetector.WRITE, violations.get(0).getOperation());
+        assertNull(violations.get(0).getKey());
+        for (int i = 0; i < COUNT; i++) {
+            assertTrue(mSharedPreferences.getBoolean(key(i), false));
+        }
+
+        assertEquals(1, mObserver.mRangeChanges);
+        assertEquals(0, mObserver.mStart);
+        assertEquals(COUNT, mObserver.mCount);
+    }
+
+    @Test
+    public void keysWithoutPreferenceAreIgnored() {
+        final HashMap<String, Boolean> values = new HashMap<>();
+        values.put(key(3), true);
+        values.put("pref_key_missing", true);
+
+        assertEquals(1, TwoStateBatch.apply(mScreen, values));
+
+        assertTrue(mSharedPreferences.getBoolean(key(3), false));
+        assertFalse(mSharedPreferences.contains("pref_key_missing"));
+        assertEquals(1, mObserver.mRangeChanges);
+        assertEquals(3, mObserver.mStart);
+        assertEquals(1, mObserver.mCount);
+    }
+
+    @Test
+    public void scatteredKeysAreRefreshedAsOneRange() {
+        final HashMap<String, Boolean> values = new HashMap<>();
+        values.put(key(3), true);
+        values.put(key(10), true);
+        values.put(key(40), true);
+
+        assertEquals(3, TwoStateBatch.apply(mScreen, values));
+
+        assertEquals(1, mObserver.mRangeChanges);
+        assertEquals(3, mObserver.mStart);
+        assertEquals(38, mObserver.mCount);
+    }
+
+    private static String key(int index) {
+        return "pref_key_batch_" + index;
+    }
+
+    private static class CountingObserver extends RecyclerView.AdapterDataObserver {
+        int mRangeChanges;
+        int mStart;
+        int mCount;
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            mRangeChanges++;
+            mStart = positionStart;
+            mCount = itemCount;
+        }
+    }
+}